@@ -54,6 +54,10 @@ CREATE TABLE IF NOT EXISTS folders (
     parent_id BIGINT NULL,
     unread_count INT DEFAULT 0,
     total_count INT DEFAULT 0,
+    uid_validity BIGINT NULL,
+    uid_next BIGINT NULL,
+    highest_modseq BIGINT NULL,
+    last_synced_at DATETIME NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (mail_account_id) REFERENCES mail_accounts(id) ON DELETE CASCADE,
     FOREIGN KEY (parent_id) REFERENCES folders(id) ON DELETE CASCADE,
@@ -68,7 +72,7 @@ CREATE TABLE IF NOT EXISTS mails (
     mail_account_id BIGINT NOT NULL,
     folder_id BIGINT NOT NULL,
     message_id VARCHAR(255),
-    uid VARCHAR(100),
+    uid BIGINT NOT NULL, -- was VARCHAR(100); SchemaMigration converts existing databases at startup
     from_address VARCHAR(255),
     to_address TEXT,
     cc_address TEXT,
@@ -90,6 +94,7 @@ CREATE TABLE IF NOT EXISTS mails (
     FOREIGN KEY (folder_id) REFERENCES folders(id) ON DELETE CASCADE,
     INDEX idx_message_id (message_id),
     INDEX idx_folder (folder_id),
+    INDEX idx_folder_uid (folder_id, uid),
     INDEX idx_sent_date (sent_date),
     INDEX idx_is_read (is_read),
     INDEX idx_is_deleted (is_deleted)
@@ -104,6 +109,7 @@ CREATE TABLE IF NOT EXISTS attachments (
     filename VARCHAR(255) NOT NULL,
     content_type VARCHAR(100),
     size_bytes BIGINT,
+    part_id VARCHAR(50),
     file_path VARCHAR(500),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (mail_id) REFERENCES mails(id) ON DELETE CASCADE,
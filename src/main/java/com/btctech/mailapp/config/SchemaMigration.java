@@ -0,0 +1,70 @@
+package com.btctech.mailapp.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Column changes ddl-auto=update cannot make (it adds columns and indexes,
+ * but never changes the type of an existing column). Each step checks the
+ * live schema first, so it runs once and is a no-op on new databases.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchemaMigration {
+
+    private static final List<String> INTEGER_TYPES = List.of("bigint", "int", "integer", "mediumint");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void migrate() {
+        migrateMailUid();
+    }
+
+    /**
+     * mails.uid was VARCHAR(100) in db_schema.sql. As text, ORDER BY uid and
+     * the keyset "uid < :lastUid" compare lexicographically ("9" > "10").
+     */
+    private void migrateMailUid() {
+        String type = columnType("mails", "uid");
+        if (type == null || INTEGER_TYPES.contains(type)) {
+            return;
+        }
+        log.warn("Converting mails.uid from {} to BIGINT", type);
+
+        // The index is a copy of IMAP: folders with rows that are not a UID are rebuilt from scratch
+        List<Long> broken = jdbcTemplate.queryForList(
+                "SELECT DISTINCT folder_id FROM mails WHERE uid NOT REGEXP '^[0-9]+$'", Long.class);
+        for (Long folderId : broken) {
+            jdbcTemplate.update("DELETE FROM attachments WHERE mail_id IN (SELECT id FROM mails WHERE folder_id = ?)",
+                    folderId);
+            jdbcTemplate.update("DELETE FROM mails WHERE folder_id = ?", folderId);
+            jdbcTemplate.update("UPDATE folders SET last_synced_at = NULL, highest_modseq = NULL WHERE id = ?",
+                    folderId);
+        }
+        if (!broken.isEmpty()) {
+            log.warn("Cleared the index of {} folders with non-numeric UIDs; they are synced again", broken.size());
+        }
+
+        jdbcTemplate.execute("ALTER TABLE mails MODIFY uid BIGINT NOT NULL");
+        log.info("✓ mails.uid is now BIGINT");
+    }
+
+    /**
+     * Data type of a column in the current database, or null if the table does not exist yet
+     */
+    private String columnType(String table, String column) {
+        List<String> types = jdbcTemplate.queryForList(
+                "SELECT DATA_TYPE FROM information_schema.COLUMNS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?",
+                String.class, table, column);
+        return types.isEmpty() ? null : types.get(0).toLowerCase(Locale.ROOT);
+    }
+}
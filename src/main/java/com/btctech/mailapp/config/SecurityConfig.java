@@ -1,5 +1,6 @@
 package com.btctech.mailapp.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -34,6 +35,9 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/register", "/api/auth/login").permitAll()
                         .requestMatchers("/error").permitAll()
 
+                        // Async re-dispatches (SSE / streamed responses) were already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
                         // Protected endpoints (require JWT)
                         .requestMatchers("/api/emails/**").authenticated()
                         .requestMatchers("/api/mail/**").authenticated() // ✅ IMPORTANT
@@ -0,0 +1,65 @@
+package com.btctech.mailapp.controller;
+
+import com.btctech.mailapp.dto.ApiResponse;
+import com.btctech.mailapp.dto.MessageActionRequest;
+import com.btctech.mailapp.dto.MessageActionResponse;
+import com.btctech.mailapp.service.MailActionService;
+import com.btctech.mailapp.service.MailExecutor;
+import com.btctech.mailapp.service.SessionService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/mail")
+@RequiredArgsConstructor
+public class MailActionController {
+    
+    private final MailActionService mailActionService;
+    private final SessionService sessionService;
+    private final MailExecutor mailExecutor;
+    
+    /**
+     * Mark read/unread, flag/unflag, move or delete a set of messages.
+     * The whole set is one IMAP command; the result lists every UID.
+     */
+    @PostMapping("/messages/batch")
+    public CompletableFuture<ResponseEntity<ApiResponse<MessageActionResponse>>> batch(
+            @Valid @RequestBody MessageActionRequest request,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Batch {} request for {} messages from: {}", request.getAction(), request.getUids().size(), email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                MessageActionResponse response = mailActionService.apply(email, password, request);
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(response, "Messages updated")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error applying batch action: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to update messages: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+}
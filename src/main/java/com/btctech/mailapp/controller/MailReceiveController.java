@@ -1,17 +1,46 @@
 package com.btctech.mailapp.controller;
 
 import com.btctech.mailapp.dto.ApiResponse;
+import com.btctech.mailapp.dto.AttachmentDTO;
 import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.FolderDTO;
 import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.dto.MailFilter;
+import com.btctech.mailapp.dto.SearchResponse;
+import com.btctech.mailapp.dto.ThreadDTO;
+import com.btctech.mailapp.dto.ThreadListResponse;
+import com.btctech.mailapp.dto.UnifiedInboxResponse;
+import com.btctech.mailapp.exception.MailException;
+import com.btctech.mailapp.service.MailExecutor;
+import com.btctech.mailapp.service.MailIndexService;
+import com.btctech.mailapp.service.MailPushService;
+import com.btctech.mailapp.service.MailReader;
+import com.btctech.mailapp.service.MaildirCounterService;
 import com.btctech.mailapp.service.MailReceiveService;
+import com.btctech.mailapp.service.MaildirReader;
 import com.btctech.mailapp.service.SessionService;
+import com.btctech.mailapp.service.UnifiedInboxService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -20,90 +49,504 @@ import java.util.List;
 public class MailReceiveController {
     
     private final MailReceiveService mailReceiveService;
+    private final MailIndexService mailIndexService;
+    private final MaildirReader maildirReader;
+    private final MaildirCounterService maildirCounterService;
+    private final MailPushService mailPushService;
     private final SessionService sessionService;
+    private final UnifiedInboxService unifiedInboxService;
+    private final MailExecutor mailExecutor;
+    private final ObjectMapper objectMapper;
     
     /**
-     * Get inbox emails
+     * Get emails of a folder (INBOX unless another folder is given)
      */
     @GetMapping("/inbox")
-    public ResponseEntity<ApiResponse<InboxResponse>> getInbox(
+    public CompletableFuture<ResponseEntity<ApiResponse<InboxResponse>>> getInbox(
+            @RequestParam(defaultValue = "INBOX") String folder,
             @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean unread,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String subject,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate since,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before,
+            @RequestParam(defaultValue = "false") boolean hasAttachment,
+            @RequestParam(required = false) Integer largerThan,
             @RequestHeader("Authorization") String authHeader,
             Authentication authentication) {
         
+        String email = authentication.getName();
+        log.info("Get {} request from: {}", folder, email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                MailFilter filter = MailFilter.builder()
+                        .unreadOnly(unread)
+                        .from(from)
+                        .subject(subject)
+                        .since(since)
+                        .before(before)
+                        .hasAttachment(hasAttachment)
+                        .largerThan(largerThan)
+                        .build();
+                
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                InboxResponse response;
+                
+                if (!filter.isEmpty()) {
+                    // Filtered listing runs as an IMAP SEARCH on the server
+                    response = mailReceiveService.getMessages(email, password, folder, filter, limit, cursor);
+                } else if (maildirReader.canServe(email, folder)) {
+                    // Read straight from the local Maildir (co-located with Dovecot)
+                    response = maildirReader.getMessages(email, password, folder, limit, cursor);
+                } else if (mailIndexService.isEnabled()) {
+                    // Served from the local index (incrementally synced from IMAP)
+                    response = mailIndexService.getMessages(email, password, folder, limit, cursor);
+                } else {
+                    // Page + total/unread counts from one IMAP session
+                    response = mailReceiveService.getMessages(email, password, folder, limit, cursor);
+                }
+                
+                log.info("✓ Fetched {} emails for {}", response.getEmails().size(), email);
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(response, "Inbox fetched successfully")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error fetching inbox: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch inbox: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * Inboxes of all of the user's mail accounts merged newest first.
+     * Accounts are read in parallel; one that fails or is slow is reported
+     * in "accounts" and does not hold up the others.
+     */
+    @GetMapping("/inbox/unified")
+    public CompletableFuture<ResponseEntity<ApiResponse<UnifiedInboxResponse>>> getUnifiedInbox(
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Get unified inbox request from: {}", email);
+        
         try {
-            String email = authentication.getName();
-            log.info("Get inbox request from: {}", email);
-            
             // Get password from session
             String token = authHeader.substring(7);
             String password = sessionService.getPasswordFromSession(token);
             
             if (password == null) {
-                return ResponseEntity.badRequest()
-                        .body(ApiResponse.error("Session expired. Please login again."));
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Session expired. Please login again.")));
             }
             
-            // Fetch emails
-            List<EmailDTO> emails = mailReceiveService.getInbox(email, password, limit);
-            
-            // Get unread count
-            int unreadCount = mailReceiveService.getUnreadCount(email, password);
-            
-            // Build response
-            InboxResponse response = InboxResponse.builder()
-                    .email(email)
-                    .totalCount(emails.size())
-                    .unreadCount(unreadCount)
-                    .emails(emails)
-                    .build();
-            
-            log.info("✓ Fetched {} emails for {}", emails.size(), email);
-            
-            return ResponseEntity.ok(
-                    ApiResponse.success(response, "Inbox fetched successfully")
-            );
+            return unifiedInboxService.getInbox(email, password, Math.min(Math.max(limit, 1), 100), cursor)
+                    .thenApply(response -> ResponseEntity.ok(
+                            ApiResponse.success(response, "Unified inbox fetched successfully")
+                    ));
             
         } catch (Exception e) {
-            log.error("Error fetching inbox: {}", e.getMessage(), e);
-            return ResponseEntity.badRequest()
-                    .body(ApiResponse.error("Failed to fetch inbox: " + e.getMessage()));
+            log.error("Error fetching unified inbox: {}", e.getMessage(), e);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Failed to fetch unified inbox: " + e.getMessage())));
+        }
+    }
+    
+    /**
+     * Total/unread counts of every folder (sidebar). Answered from the
+     * in-memory Maildir counters when available, otherwise from one
+     * pipelined round of IMAP STATUS commands; the session is checked either way.
+     */
+    @GetMapping("/folders")
+    public CompletableFuture<ResponseEntity<ApiResponse<List<FolderDTO>>>> getFolders(
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        
+        // Checked before the counters too, so a logged-out token gets nothing
+        String password;
+        try {
+            password = sessionService.getPasswordFromSession(authHeader.substring(7));
+        } catch (MailException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage())));
+        }
+        if (password == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Session expired. Please login again.")));
+        }
+        
+        List<FolderDTO> counted = maildirCounterService.getFolderCounts(email);
+        if (counted != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(
+                    ApiResponse.success(counted, "Folders fetched successfully")
+            ));
+        }
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                List<FolderDTO> folders = mailReceiveService.getFolders(email, password);
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(folders, "Folders fetched successfully")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error fetching folders: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch folders: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * Full-text search (subject, addresses, body), ranked and paginated
+     */
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<ApiResponse<SearchResponse>>> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "INBOX") String folder,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Search request from: {}", email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                if (!mailIndexService.isEnabled()) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Search requires the local mail index"));
+                }
+                
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                SearchResponse response = mailIndexService.search(email, password, folder, q,
+                        Math.max(page, 0), Math.min(Math.max(size, 1), 100));
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(response, "Search completed")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error searching mail: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to search: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * Conversations with a message in the folder, latest activity first
+     */
+    @GetMapping("/threads")
+    public CompletableFuture<ResponseEntity<ApiResponse<ThreadListResponse>>> getThreads(
+            @RequestParam(defaultValue = "INBOX") String folder,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Get threads of {} request from: {}", folder, email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                if (!mailIndexService.isEnabled()) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Threads require the local mail index"));
+                }
+                
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                ThreadListResponse response = mailIndexService.getThreads(email, password, folder,
+                        Math.max(page, 0), Math.min(Math.max(size, 1), 100));
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(response, "Threads fetched successfully")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error fetching threads: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch threads: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * All messages of one conversation (across folders), oldest first
+     */
+    @GetMapping("/threads/{threadId}")
+    public CompletableFuture<ResponseEntity<ApiResponse<ThreadDTO>>> getThread(
+            @PathVariable String threadId,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Get thread {} request from: {}", threadId, email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                if (!mailIndexService.isEnabled()) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Threads require the local mail index"));
+                }
+                
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                ThreadDTO thread = mailIndexService.getThread(email, password, threadId);
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(thread, "Thread fetched successfully")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error fetching thread: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch thread: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * Get unread count (badge). Answered from the in-memory Maildir counters
+     * when available - no IMAP involved, but the session is still checked.
+     */
+    @GetMapping("/unread-count")
+    public CompletableFuture<ResponseEntity<ApiResponse<Map<String, Object>>>> getUnreadCount(
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        
+        // A logged-out token must not read counts either
+        String password;
+        try {
+            password = sessionService.getPasswordFromSession(authHeader.substring(7));
+        } catch (MailException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage())));
+        }
+        if (password == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Session expired. Please login again.")));
         }
+        
+        Map<String, Object> data = new HashMap<>();
+        data.put("email", email);
+        
+        List<FolderDTO> folders = maildirCounterService.getFolderCounts(email);
+        if (folders != null) {
+            data.put("unreadCount", folders.isEmpty() ? 0 : folders.get(0).getUnreadCount());
+            data.put("folders", folders);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(ApiResponse.success(data, "Unread count fetched")));
+        }
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                MailReader reader = maildirReader.canServe(email, "INBOX") ? maildirReader : mailReceiveService;
+                data.put("unreadCount", reader.getUnreadCount(email, password));
+                
+                return ResponseEntity.ok(ApiResponse.success(data, "Unread count fetched"));
+                
+            } catch (Exception e) {
+                log.error("Error fetching unread count: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch unread count: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
     }
     
     /**
      * Get single email
      */
     @GetMapping("/email/{uid}")
-    public ResponseEntity<ApiResponse<EmailDTO>> getEmail(
+    public CompletableFuture<ResponseEntity<ApiResponse<EmailDTO>>> getEmail(
+            @PathVariable String uid,
+            @RequestParam(defaultValue = "INBOX") String folder,
+            @RequestParam(required = false) Long uidValidity,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Get email {} request from: {}", uid, email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .body(ApiResponse.error("Session expired. Please login again."));
+                }
+                
+                // Fetch email (local Maildir when available, IMAP otherwise)
+                MailReader reader = maildirReader.canServe(email, folder) ? maildirReader : mailReceiveService;
+                EmailDTO emailDTO = reader.getEmail(email, password, folder, uid, uidValidity);
+                
+                return ResponseEntity.ok(
+                        ApiResponse.success(emailDTO, "Email fetched successfully")
+                );
+                
+            } catch (Exception e) {
+                log.error("Error fetching email: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Failed to fetch email: " + e.getMessage()));
+            }
+        }, MailResponses::busy);
+    }
+    
+    /**
+     * Download an attachment.
+     * The part is streamed from IMAP to the client without buffering it in memory.
+     */
+    @GetMapping("/email/{uid}/attachments/{partId}")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> downloadAttachment(
             @PathVariable String uid,
+            @PathVariable String partId,
+            @RequestParam(defaultValue = "INBOX") String folder,
+            @RequestParam(required = false) Long uidValidity,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        String email = authentication.getName();
+        log.info("Download attachment {} of {} request from: {}", partId, uid, email);
+        
+        return mailExecutor.submit(email, () -> {
+            try {
+                // Get password from session
+                String token = authHeader.substring(7);
+                String password = sessionService.getPasswordFromSession(token);
+                
+                if (password == null) {
+                    return ResponseEntity.badRequest()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(json(ApiResponse.error("Session expired. Please login again.")));
+                }
+                
+                // Resolve headers from BODYSTRUCTURE before streaming the content
+                AttachmentDTO attachment = mailReceiveService.getAttachmentInfo(email, password, folder, uid, partId,
+                        uidValidity);
+                
+                // Written on the MVC async thread, so it takes its own bulkhead slots
+                StreamingResponseBody body = out -> {
+                    try {
+                        mailExecutor.call(email, () -> {
+                            mailReceiveService.streamAttachment(email, password, folder, uid, partId, uidValidity, out);
+                            return null;
+                        });
+                    } catch (IOException | RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    }
+                };
+                
+                return ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(attachment.getContentType()))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                .filename(attachment.getFilename(), StandardCharsets.UTF_8)
+                                .build()
+                                .toString())
+                        .body(body);
+                
+            } catch (Exception e) {
+                log.error("Error downloading attachment: {}", e.getMessage(), e);
+                return ResponseEntity.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(json(ApiResponse.error("Failed to download attachment: " + e.getMessage())));
+            }
+        }, e -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json(ApiResponse.error(MailExecutor.unwrap(e).getMessage()))));
+    }
+    
+    /**
+     * Stream mailbox events (new message / flags changed / expunged) as SSE
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(
             @RequestHeader("Authorization") String authHeader,
             Authentication authentication) {
         
+        String email = authentication.getName();
+        log.info("Event stream request from: {}", email);
+        
         try {
-            String email = authentication.getName();
-            log.info("Get email {} request from: {}", uid, email);
-            
             // Get password from session
             String token = authHeader.substring(7);
             String password = sessionService.getPasswordFromSession(token);
             
             if (password == null) {
-                return ResponseEntity.badRequest()
-                        .body(ApiResponse.error("Session expired. Please login again."));
+                return errorStream("Session expired. Please login again.");
             }
             
-            // Fetch email
-            EmailDTO emailDTO = mailReceiveService.getEmail(email, password, uid);
-            
-            return ResponseEntity.ok(
-                    ApiResponse.success(emailDTO, "Email fetched successfully")
-            );
+            return mailPushService.subscribe(email, password);
             
         } catch (Exception e) {
-            log.error("Error fetching email: {}", e.getMessage(), e);
-            return ResponseEntity.badRequest()
-                    .body(ApiResponse.error("Failed to fetch email: " + e.getMessage()));
+            log.error("Error opening event stream: {}", e.getMessage(), e);
+            return errorStream("Failed to open event stream: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * JSON body for endpoints whose successful response is a stream
+     */
+    private StreamingResponseBody json(ApiResponse<?> response) {
+        return out -> objectMapper.writeValue(out, response);
+    }
+    
+    /**
+     * SSE stream that reports a single error and ends
+     */
+    private SseEmitter errorStream(String message) {
+        SseEmitter emitter = new SseEmitter(0L);
+        try {
+            emitter.send(SseEmitter.event().name("error").data(ApiResponse.error(message)));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
         }
+        return emitter;
     }
 }
\ No newline at end of file
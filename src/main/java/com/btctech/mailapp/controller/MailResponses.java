@@ -0,0 +1,27 @@
+package com.btctech.mailapp.controller;
+
+import com.btctech.mailapp.dto.ApiResponse;
+import com.btctech.mailapp.service.MailExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Responses shared by the controllers that run their work on the MailExecutor
+ */
+@Slf4j
+final class MailResponses {
+
+    private MailResponses() {
+    }
+
+    /**
+     * 503 for work the mail executor would not take (mailbox or server saturated)
+     */
+    static <T> ResponseEntity<ApiResponse<T>> busy(Throwable e) {
+        String message = MailExecutor.unwrap(e).getMessage();
+        log.warn("Mail request not run: {}", message);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ApiResponse.error(message));
+    }
+}
@@ -1,20 +1,26 @@
 package com.btctech.mailapp.controller;
 
 import com.btctech.mailapp.dto.ApiResponse;
+import com.btctech.mailapp.dto.BulkSendRequest;
+import com.btctech.mailapp.dto.BulkSendStatus;
+import com.btctech.mailapp.dto.OutboundMailDTO;
 import com.btctech.mailapp.dto.SendMailRequest;
 import com.btctech.mailapp.entity.MailAccount;
 import com.btctech.mailapp.service.MailSendService;
 import com.btctech.mailapp.service.MailboxService;
+import com.btctech.mailapp.service.OutboundMailService;
 import com.btctech.mailapp.service.SessionService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -25,16 +31,43 @@ public class MailSendController {
     private final MailSendService mailSendService;
     private final SessionService sessionService;
     private final MailboxService mailboxService;
+    private final OutboundMailService outboundMailService;
     
     /**
      * Send email - NO PASSWORD NEEDED in request!
+     * Queues the message and answers 202 with its job id at once;
+     * follow delivery with GET /api/mail/send/{jobId}
      */
     @PostMapping("/send")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> sendMail(
+    public ResponseEntity<ApiResponse<OutboundMailDTO>> sendMail(
             @Valid @RequestBody SendMailRequest request,
             @RequestHeader("Authorization") String authHeader,
             Authentication authentication) {
         
+        return queueMail(request, List.of(), authHeader, authentication);
+    }
+    
+    /**
+     * Send email with attachments - multipart/form-data with the
+     * SendMailRequest fields (to, cc, bcc, subject, body, isHtml) and one
+     * "attachments" part per file
+     */
+    @PostMapping(value = "/send", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<OutboundMailDTO>> sendMailWithAttachments(
+            @Valid @ModelAttribute SendMailRequest request,
+            @RequestParam(value = "attachments", required = false) List<MultipartFile> attachments,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        return queueMail(request, attachments != null ? attachments : List.of(), authHeader, authentication);
+    }
+    
+    private ResponseEntity<ApiResponse<OutboundMailDTO>> queueMail(
+            SendMailRequest request,
+            List<MultipartFile> attachments,
+            String authHeader,
+            Authentication authentication) {
+        
         try {
             // Get email from authentication
             String fromEmail = authentication.getName();
@@ -59,21 +92,11 @@ public class MailSendController {
                         .body(ApiResponse.error("Email account is disabled"));
             }
             
-            // Send email
-            mailSendService.sendMail(fromEmail, password, request);
-            
-            // Prepare success response
-            Map<String, Object> data = new HashMap<>();
-            data.put("from", fromEmail);
-            data.put("to", request.getTo());
-            data.put("subject", request.getSubject());
-            data.put("sentAt", System.currentTimeMillis());
+            // Queue email
+            OutboundMailDTO job = mailSendService.sendMail(mailAccount, password, request, attachments);
             
-            log.info("✓ Email sent successfully from {} to {}", fromEmail, request.getTo());
-            
-            return ResponseEntity.ok(
-                    ApiResponse.success(data, "Email sent successfully")
-            );
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(job, "Email queued for delivery"));
             
         } catch (Exception e) {
             log.error("Error sending email: {}", e.getMessage(), e);
@@ -81,4 +104,87 @@ public class MailSendController {
                     .body(ApiResponse.error("Failed to send email: " + e.getMessage()));
         }
     }
+    
+    /**
+     * Bulk send - subject/body templates plus one row per recipient.
+     * Answers 202 with the batch id once every message is queued;
+     * follow progress with GET /api/mail/send/bulk/{batchId}
+     */
+    @PostMapping("/send/bulk")
+    public ResponseEntity<ApiResponse<BulkSendStatus>> sendBulk(
+            @Valid @RequestBody BulkSendRequest request,
+            @RequestHeader("Authorization") String authHeader,
+            Authentication authentication) {
+        
+        try {
+            String fromEmail = authentication.getName();
+            log.info("Bulk send request from {} to {} recipients", fromEmail, request.getRecipients().size());
+            
+            String password = sessionService.getPasswordFromSession(authHeader.substring(7));
+            
+            if (password == null || password.isEmpty()) {
+                log.error("Password not found in session for {}", fromEmail);
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Session expired or invalid. Please login again."));
+            }
+            
+            MailAccount mailAccount = mailboxService.getMailAccountByEmail(fromEmail);
+            if (!mailAccount.getActive()) {
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Email account is disabled"));
+            }
+            
+            BulkSendStatus batch = mailSendService.sendBulk(mailAccount, password, request);
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(batch, batch.getTotal() + " emails queued for delivery"));
+            
+        } catch (Exception e) {
+            log.error("Error sending bulk email: {}", e.getMessage(), e);
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Failed to send bulk email: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Progress of a bulk send, with one page of per-recipient status
+     */
+    @GetMapping("/send/bulk/{batchId}")
+    public ResponseEntity<ApiResponse<BulkSendStatus>> getBulkStatus(
+            @PathVariable String batchId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size,
+            Authentication authentication) {
+        
+        try {
+            BulkSendStatus batch = outboundMailService.getBatchStatus(authentication.getName(), batchId,
+                    Math.max(page, 0), Math.max(1, Math.min(size, 1000)));
+            return ResponseEntity.ok(ApiResponse.success(batch,
+                    batch.getSent() + " of " + batch.getTotal() + " emails sent"));
+            
+        } catch (Exception e) {
+            log.error("Error getting bulk send status: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Delivery status of a queued email
+     */
+    @GetMapping("/send/{jobId}")
+    public ResponseEntity<ApiResponse<OutboundMailDTO>> getSendStatus(
+            @PathVariable Long jobId,
+            Authentication authentication) {
+        
+        try {
+            OutboundMailDTO job = outboundMailService.getStatus(authentication.getName(), jobId);
+            return ResponseEntity.ok(ApiResponse.success(job, "Email " + job.getStatus().toLowerCase()));
+            
+        } catch (Exception e) {
+            log.error("Error getting send status: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountInboxDTO {
+    private String email;
+    private int totalCount;
+    private int unreadCount;
+    private boolean success;
+    private String error;
+}
@@ -0,0 +1,17 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentDTO {
+    private String partId;
+    private String filename;
+    private String contentType;
+    private long size;
+}
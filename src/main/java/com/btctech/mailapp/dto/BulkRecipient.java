@@ -0,0 +1,17 @@
+package com.btctech.mailapp.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class BulkRecipient {
+
+    @NotBlank(message = "Recipient email is required")
+    @Email(message = "Invalid recipient email format")
+    private String to;
+
+    private Map<String, String> variables;
+}
@@ -0,0 +1,21 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRecipientStatus {
+    private Long jobId;
+    private String to;
+    private String status;
+    private int attempts;
+    private String lastError;
+    private Date sentAt;
+}
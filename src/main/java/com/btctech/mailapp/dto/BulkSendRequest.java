@@ -0,0 +1,30 @@
+package com.btctech.mailapp.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkSendRequest {
+
+    /**
+     * Subject and body are templates: "{{name}}" is replaced by the recipient's
+     * variable of that name, "{{email}}" by the recipient address
+     */
+    @NotBlank(message = "Subject is required")
+    @Size(max = 500, message = "Subject cannot exceed 500 characters")
+    private String subject;
+
+    @NotBlank(message = "Email body is required")
+    private String body;
+
+    private Boolean isHtml = false;
+
+    @NotEmpty(message = "At least one recipient is required")
+    @Valid
+    private List<BulkRecipient> recipients;
+}
@@ -0,0 +1,24 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkSendStatus {
+    private String batchId;
+    private long total;
+    private long queued;
+    private long sending;
+    private long sent;
+    private long failed;
+    private boolean finished; // nothing left to queue or send
+    private List<BulkRecipientStatus> recipients; // one page, in submission order
+    private boolean hasMore;
+}
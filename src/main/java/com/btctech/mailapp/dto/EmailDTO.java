@@ -9,21 +9,26 @@ import java.util.Date;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class EmailDTO {
     private String uid;
+    private long uidValidity;
+    private String account;
+    private String folder;
     private String messageId;
+    private String threadId;
     private String from;
     private String to;
     private String subject;
+    private String preview;
     private String body;
     private String htmlBody;
     private Date sentDate;
     private Date receivedDate;
     private boolean isRead;
     private boolean hasAttachments;
-    private List<String> attachments;
+    private List<AttachmentDTO> attachments;
     private int size;
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FolderDTO {
+    private String name;
+    private int totalCount;
+    private int unreadCount;
+}
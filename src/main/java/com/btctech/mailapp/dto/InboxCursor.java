@@ -0,0 +1,37 @@
+package com.btctech.mailapp.dto;
+
+import com.btctech.mailapp.exception.MailException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor for inbox paging: the mailbox UIDVALIDITY and the
+ * oldest UID already returned. The next page starts right below lastUid.
+ */
+@Data
+@AllArgsConstructor
+public class InboxCursor {
+    private long uidValidity;
+    private long lastUid;
+
+    public String encode() {
+        String raw = uidValidity + ":" + lastUid;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static InboxCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            return new InboxCursor(
+                    Long.parseLong(raw.substring(0, sep)),
+                    Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new MailException("Invalid cursor");
+        }
+    }
+}
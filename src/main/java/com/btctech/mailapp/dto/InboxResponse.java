@@ -13,7 +13,12 @@ import java.util.List;
 @AllArgsConstructor
 public class InboxResponse {
     private String email;
+    private String folder;
     private int totalCount;
     private int unreadCount;
     private List<EmailDTO> emails;
+    private long uidValidity;
+    private long uidNext;
+    private boolean hasMore;
+    private String nextCursor;
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Listing filter, evaluated by the IMAP server (SEARCH)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailFilter {
+    private boolean unreadOnly;
+    private String from;
+    private String subject;
+    private LocalDate since;
+    private LocalDate before;
+    private boolean hasAttachment;
+    private Integer largerThan;
+
+    public boolean isEmpty() {
+        return !unreadOnly && isBlank(from) && isBlank(subject) && since == null && before == null
+                && !hasAttachment && largerThan == null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,28 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailboxEvent {
+
+    public enum Type {
+        NEW_MESSAGE,
+        FLAGS_CHANGED,
+        EXPUNGED
+    }
+
+    private Type type;
+    private String email;
+    private String folder;
+    private List<Long> uids;
+    private int messageCount;
+    private long timestamp;
+}
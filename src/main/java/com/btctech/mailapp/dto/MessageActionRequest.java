@@ -0,0 +1,29 @@
+package com.btctech.mailapp.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MessageActionRequest {
+
+    /**
+     * READ, UNREAD, FLAG, UNFLAG, MOVE or DELETE
+     */
+    @NotBlank(message = "Action is required")
+    private String action;
+
+    private String folder = "INBOX";
+
+    private Long uidValidity;
+
+    @NotEmpty(message = "At least one UID is required")
+    private List<String> uids;
+
+    /**
+     * Destination folder for MOVE
+     */
+    private String targetFolder;
+}
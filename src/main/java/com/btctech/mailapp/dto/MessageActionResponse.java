@@ -0,0 +1,22 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageActionResponse {
+    private String action;
+    private String folder;
+    private String targetFolder;
+    private long uidValidity;
+    private int requested;
+    private int succeeded;
+    private List<MessageActionResult> results;
+}
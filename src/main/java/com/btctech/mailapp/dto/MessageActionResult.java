@@ -0,0 +1,17 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageActionResult {
+    private String uid;
+    private boolean success;
+    private String newUid; // UID in the target folder after MOVE, if the server reports it
+    private String error;
+}
@@ -0,0 +1,27 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundMailDTO {
+    private Long jobId;
+    private String status; // QUEUED, SENDING, SENT or FAILED
+    private String from;
+    private String recipients;
+    private String subject;
+    private String messageId;
+    private int attempts;
+    private Date nextAttemptAt; // only while QUEUED
+    private String lastError;
+    private Date createdAt;
+    private Date sentAt;
+    private String sentCopy; // PENDING, APPENDING, SAVED or FAILED; null if no copy is made
+}
@@ -0,0 +1,22 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResponse {
+    private String query;
+    private String folder;
+    private int totalHits;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private List<EmailDTO> emails;
+}
@@ -0,0 +1,25 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThreadDTO {
+    private String threadId;
+    private String subject;
+    private int messageCount;
+    private int unreadCount;
+    private List<String> participants;
+    private Date latestDate;
+    private String preview;
+    private boolean hasAttachments;
+    private List<EmailDTO> messages; // only when fetching a single thread
+}
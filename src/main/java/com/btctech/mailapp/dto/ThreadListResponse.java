@@ -0,0 +1,21 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThreadListResponse {
+    private String email;
+    private String folder;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private List<ThreadDTO> threads;
+}
@@ -0,0 +1,52 @@
+package com.btctech.mailapp.dto;
+
+import com.btctech.mailapp.exception.MailException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opaque cursor of the unified inbox: the position of every account, which
+ * is that account's own InboxCursor, START before its first message was
+ * returned or DONE once it has none left.
+ */
+@Data
+@AllArgsConstructor
+public class UnifiedCursor {
+    public static final String START = "";
+    public static final String DONE = "-";
+
+    private Map<String, String> positions;
+
+    public String encode() {
+        StringBuilder raw = new StringBuilder();
+        for (Map.Entry<String, String> entry : positions.entrySet()) {
+            raw.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UnifiedCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            Map<String, String> positions = new LinkedHashMap<>();
+            for (String line : raw.split("\n")) {
+                int sep = line.indexOf('\t');
+                if (sep > 0) {
+                    positions.put(line.substring(0, sep), line.substring(sep + 1));
+                }
+            }
+            if (positions.isEmpty()) {
+                throw new MailException("Invalid cursor");
+            }
+            return new UnifiedCursor(positions);
+        } catch (IllegalArgumentException e) {
+            throw new MailException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.btctech.mailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UnifiedInboxResponse {
+    private List<AccountInboxDTO> accounts;
+    private int totalCount;
+    private int unreadCount;
+    private List<EmailDTO> emails;
+    private boolean hasMore;
+    private String nextCursor;
+}
@@ -0,0 +1,78 @@
+package com.btctech.mailapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "mails", indexes = {
+        @Index(name = "idx_folder_uid", columnList = "folder_id, uid"),
+        @Index(name = "idx_account_message_id", columnList = "mail_account_id, message_id"),
+        @Index(name = "idx_account_thread", columnList = "mail_account_id, thread_id")
+})
+public class Mail {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mail_account_id", nullable = false)
+    private Long mailAccountId;
+
+    @Column(name = "folder_id", nullable = false)
+    private Long folderId;
+
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(nullable = false)
+    private Long uid;
+
+    @Column(name = "from_address")
+    private String fromAddress;
+
+    @Column(name = "to_address", columnDefinition = "TEXT")
+    private String toAddress;
+
+    @Column(name = "cc_address", columnDefinition = "TEXT")
+    private String ccAddress;
+
+    @Column(length = 500)
+    private String subject;
+
+    @Column(length = 300)
+    private String preview;
+
+    @Column(name = "sent_date")
+    private LocalDateTime sentDate;
+
+    @Column(name = "received_date")
+    private LocalDateTime receivedDate;
+
+    @Column(name = "is_read")
+    private Boolean isRead = false;
+
+    @Column(name = "is_starred")
+    private Boolean isStarred = false;
+
+    @Column(name = "is_deleted")
+    private Boolean isDeleted = false;
+
+    @Column(name = "has_attachments")
+    private Boolean hasAttachments = false;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes = 0L;
+
+    @Column(name = "in_reply_to")
+    private String inReplyTo;
+
+    @Column(name = "`references`", columnDefinition = "TEXT")
+    private String references;
+
+    @Column(name = "thread_id", length = 32)
+    private String threadId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
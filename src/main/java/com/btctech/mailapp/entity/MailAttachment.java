@@ -0,0 +1,36 @@
+package com.btctech.mailapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "attachments")
+public class MailAttachment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mail_id", nullable = false)
+    private Long mailId;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    // MIME part path inside the message (e.g. "2" or "1.2")
+    @Column(name = "part_id", length = 50)
+    private String partId;
+
+    @Column(name = "file_path", length = 500)
+    private String filePath;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
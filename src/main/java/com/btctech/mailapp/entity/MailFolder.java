@@ -0,0 +1,48 @@
+package com.btctech.mailapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "folders")
+public class MailFolder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mail_account_id", nullable = false)
+    private Long mailAccountId;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @Column(name = "folder_type", length = 20)
+    private String folderType = "CUSTOM";
+
+    @Column(name = "parent_id")
+    private Long parentId;
+
+    @Column(name = "unread_count")
+    private Integer unreadCount = 0;
+
+    @Column(name = "total_count")
+    private Integer totalCount = 0;
+
+    // IMAP sync state
+    @Column(name = "uid_validity")
+    private Long uidValidity;
+
+    @Column(name = "uid_next")
+    private Long uidNext;
+
+    @Column(name = "highest_modseq")
+    private Long highestModSeq;
+
+    @Column(name = "last_synced_at")
+    private LocalDateTime lastSyncedAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,102 @@
+package com.btctech.mailapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * One message in the outbound queue.
+ * The message is stored ready to send (RFC 822, Bcc header stripped and kept
+ * apart for the Sent copy) with its envelope recipients, so every attempt
+ * delivers exactly the same bytes and Message-ID - in raw_message, or for
+ * messages with attachments in a spool file. The sender's password is kept
+ * AES-encrypted only until the job reaches FAILED, or SENT and its copy is
+ * saved to the Sent folder.
+ */
+@Data
+@Entity
+@Table(name = "outbound_mails", indexes = {
+        @Index(name = "idx_outbound_status_next", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_outbound_from", columnList = "from_email"),
+        @Index(name = "idx_outbound_batch", columnList = "batch_id, id"),
+        @Index(name = "idx_outbound_copy", columnList = "copy_status, next_attempt_at")
+})
+public class OutboundMail {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mail_account_id", nullable = false)
+    private Long mailAccountId;
+
+    @Column(name = "from_email", nullable = false)
+    private String fromEmail;
+
+    // Set for messages of one bulk send
+    @Column(name = "batch_id", length = 36)
+    private String batchId;
+
+    // Envelope recipients (To, Cc and Bcc), comma separated
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String recipients;
+
+    // Bcc header stripped from the stored message, put back in the Sent copy
+    @Column(columnDefinition = "TEXT")
+    private String bcc;
+
+    @Column(length = 500)
+    private String subject;
+
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(name = "raw_message", columnDefinition = "LONGBLOB")
+    private byte[] rawMessage;
+
+    // Messages with attachments are spooled to disk instead of raw_message
+    @Column(name = "spool_path", length = 500)
+    private String spoolPath;
+
+    @Column(name = "encrypted_password", columnDefinition = "TEXT")
+    private String encryptedPassword;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.QUEUED;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    // Also the next Sent copy attempt once the job is SENT
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    // When a worker took the job or its Sent copy (rows left behind by a crash are requeued)
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    // Copy to the sender's Sent folder, null when none is made
+    @Enumerated(EnumType.STRING)
+    @Column(name = "copy_status", length = 20)
+    private CopyStatus copyStatus;
+
+    @Column(name = "copy_attempts", nullable = false)
+    private Integer copyAttempts = 0;
+
+    public enum Status {
+        QUEUED, SENDING, SENT, FAILED
+    }
+
+    public enum CopyStatus {
+        PENDING, APPENDING, SAVED, FAILED
+    }
+}
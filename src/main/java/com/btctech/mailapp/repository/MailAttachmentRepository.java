@@ -0,0 +1,24 @@
+package com.btctech.mailapp.repository;
+
+import com.btctech.mailapp.entity.MailAttachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MailAttachmentRepository extends JpaRepository<MailAttachment, Long> {
+    List<MailAttachment> findByMailId(Long mailId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MailAttachment a WHERE a.mailId IN (SELECT m.id FROM Mail m WHERE m.folderId = :folderId)")
+    int deleteByFolderId(Long folderId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MailAttachment a WHERE a.mailId IN :mailIds")
+    int deleteByMailIdIn(Collection<Long> mailIds);
+}
@@ -0,0 +1,12 @@
+package com.btctech.mailapp.repository;
+
+import com.btctech.mailapp.entity.MailFolder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+import java.util.Optional;
+
+public interface MailFolderRepository extends JpaRepository<MailFolder, Long> {
+    Optional<MailFolder> findByMailAccountIdAndName(Long mailAccountId, String name);
+
+    List<MailFolder> findByMailAccountId(Long mailAccountId);
+}
@@ -0,0 +1,83 @@
+package com.btctech.mailapp.repository;
+
+import com.btctech.mailapp.entity.Mail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface MailRepository extends JpaRepository<Mail, Long> {
+
+    // Keyset page: newest first, strictly below the cursor UID
+    List<Mail> findByFolderIdAndUidLessThanOrderByUidDesc(Long folderId, Long uid, Pageable pageable);
+
+    List<Mail> findByFolderId(Long folderId);
+
+    List<Mail> findByFolderIdAndUidIn(Long folderId, Collection<Long> uids);
+
+    @Query("SELECT m.uid FROM Mail m WHERE m.folderId = :folderId")
+    List<Long> findUidsByFolderId(Long folderId);
+
+    @Query("SELECT MAX(m.uid) FROM Mail m WHERE m.folderId = :folderId")
+    Long findMaxUidByFolderId(Long folderId);
+
+    long countByFolderId(Long folderId);
+
+    long countByFolderIdAndIsReadFalse(Long folderId);
+
+    List<Mail> findByMailAccountIdAndMessageIdIn(Long mailAccountId, Collection<String> messageIds);
+
+    List<Mail> findByMailAccountIdAndThreadIdIsNullOrderByIdAsc(Long mailAccountId, Pageable pageable);
+
+    boolean existsByMailAccountIdAndThreadIdIsNull(Long mailAccountId);
+
+    List<Mail> findByMailAccountIdAndThreadIdIn(Long mailAccountId, Collection<String> threadIds);
+
+    List<Mail> findByMailAccountIdAndThreadIdOrderByReceivedDateAscIdAsc(Long mailAccountId, String threadId);
+
+    @Query("SELECT DISTINCT m.threadId FROM Mail m WHERE m.mailAccountId = :mailAccountId AND m.threadId IN :threadIds")
+    List<String> findThreadIdsIn(Long mailAccountId, Collection<String> threadIds);
+
+    // Threads with at least one message in the folder, most recent activity first
+    @Query("SELECT m.threadId AS threadId, MAX(m.receivedDate) AS latest, COUNT(m) AS messageCount, "
+            + "SUM(CASE WHEN m.isRead = false THEN 1 ELSE 0 END) AS unreadCount "
+            + "FROM Mail m WHERE m.mailAccountId = :mailAccountId AND m.threadId IN "
+            + "(SELECT f.threadId FROM Mail f WHERE f.folderId = :folderId) "
+            + "GROUP BY m.threadId ORDER BY MAX(m.receivedDate) DESC")
+    List<ThreadRow> findThreadsByFolder(Long mailAccountId, Long folderId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Mail m WHERE m.folderId = :folderId")
+    int deleteByFolderId(Long folderId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Mail m WHERE m.folderId = :folderId AND m.uid IN :uids")
+    int deleteByFolderIdAndUidIn(Long folderId, Collection<Long> uids);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Mail m SET m.isRead = :isRead, m.isStarred = :isStarred WHERE m.folderId = :folderId AND m.uid = :uid")
+    int updateFlags(Long folderId, Long uid, Boolean isRead, Boolean isStarred);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Mail m SET m.threadId = :threadId WHERE m.mailAccountId = :mailAccountId AND m.threadId = :oldThreadId")
+    int moveThread(Long mailAccountId, String oldThreadId, String threadId);
+
+    interface ThreadRow {
+        String getThreadId();
+
+        LocalDateTime getLatest();
+
+        long getMessageCount();
+
+        long getUnreadCount();
+    }
+}
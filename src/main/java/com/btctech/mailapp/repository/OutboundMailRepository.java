@@ -0,0 +1,101 @@
+package com.btctech.mailapp.repository;
+
+import com.btctech.mailapp.entity.OutboundMail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface OutboundMailRepository extends JpaRepository<OutboundMail, Long> {
+
+    Optional<OutboundMail> findByIdAndFromEmail(Long id, String fromEmail);
+
+    // Jobs due for an attempt, oldest first, skipping senders already at their limit (no message bodies loaded)
+    @Query("SELECT o.id AS id, o.fromEmail AS fromEmail FROM OutboundMail o "
+            + "WHERE o.status = :status AND o.nextAttemptAt <= :now AND o.fromEmail NOT IN :busy "
+            + "ORDER BY o.nextAttemptAt")
+    List<DueMail> findDue(OutboundMail.Status status, LocalDateTime now, Collection<String> busy, Pageable pageable);
+
+    @Query("SELECT o.status AS status, COUNT(o) AS count FROM OutboundMail o "
+            + "WHERE o.batchId = :batchId AND o.fromEmail = :fromEmail GROUP BY o.status")
+    List<StatusCount> countByBatch(String batchId, String fromEmail);
+
+    @Query("SELECT o.id AS id, o.recipients AS recipients, o.status AS status, o.attempts AS attempts, "
+            + "o.lastError AS lastError, o.sentAt AS sentAt FROM OutboundMail o "
+            + "WHERE o.batchId = :batchId AND o.fromEmail = :fromEmail ORDER BY o.id")
+    List<BatchRow> findBatchRows(String batchId, String fromEmail, Pageable pageable);
+
+    // Atomic QUEUED -> SENDING; 0 when another worker or instance got there first
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundMail o SET o.status = :to, o.claimedAt = :now WHERE o.id = :id AND o.status = :from")
+    int claim(Long id, OutboundMail.Status from, OutboundMail.Status to, LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundMail o SET o.status = :to, o.nextAttemptAt = :now "
+            + "WHERE o.status = :from AND o.claimedAt < :claimedBefore")
+    int requeueStale(OutboundMail.Status from, OutboundMail.Status to, LocalDateTime claimedBefore, LocalDateTime now);
+
+    // Sent copies still to be saved keep their job
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboundMail o WHERE o.status IN :statuses AND o.createdAt < :before "
+            + "AND (o.copyStatus IS NULL OR o.copyStatus NOT IN :copying)")
+    int deleteFinishedBefore(List<OutboundMail.Status> statuses, List<OutboundMail.CopyStatus> copying,
+                             LocalDateTime before);
+
+    // Senders with Sent copies due, longest waiting first
+    @Query("SELECT o.fromEmail FROM OutboundMail o WHERE o.copyStatus = :status AND o.nextAttemptAt <= :now "
+            + "GROUP BY o.fromEmail ORDER BY MIN(o.nextAttemptAt)")
+    List<String> findCopySenders(OutboundMail.CopyStatus status, LocalDateTime now, Pageable pageable);
+
+    @Query("SELECT o.id FROM OutboundMail o WHERE o.fromEmail = :fromEmail AND o.copyStatus = :status "
+            + "AND o.nextAttemptAt <= :now ORDER BY o.id")
+    List<Long> findCopiesDue(String fromEmail, OutboundMail.CopyStatus status, LocalDateTime now, Pageable pageable);
+
+    // Atomic PENDING -> APPENDING of one Sent copy
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundMail o SET o.copyStatus = :to, o.claimedAt = :now WHERE o.id = :id AND o.copyStatus = :from")
+    int claimCopy(Long id, OutboundMail.CopyStatus from, OutboundMail.CopyStatus to, LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundMail o SET o.copyStatus = :to, o.nextAttemptAt = :now "
+            + "WHERE o.copyStatus = :from AND o.claimedAt < :claimedBefore")
+    int requeueStaleCopies(OutboundMail.CopyStatus from, OutboundMail.CopyStatus to, LocalDateTime claimedBefore,
+                           LocalDateTime now);
+
+    interface DueMail {
+        Long getId();
+
+        String getFromEmail();
+    }
+
+    interface StatusCount {
+        OutboundMail.Status getStatus();
+
+        long getCount();
+    }
+
+    interface BatchRow {
+        Long getId();
+
+        String getRecipients();
+
+        OutboundMail.Status getStatus();
+
+        Integer getAttempts();
+
+        String getLastError();
+
+        LocalDateTime getSentAt();
+    }
+}
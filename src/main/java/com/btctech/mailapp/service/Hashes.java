@@ -0,0 +1,34 @@
+package com.btctech.mailapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 digests as lower-case hex, for keys and file names
+ */
+final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * Hex of the full digest of the UTF-8 bytes of the value
+     */
+    static String sha256Hex(String value) {
+        return sha256Hex(value, 32);
+    }
+
+    /**
+     * Hex of the first bytes of the digest (16 bytes are plenty for ids that only need to be unique)
+     */
+    static String sha256Hex(String value, int bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
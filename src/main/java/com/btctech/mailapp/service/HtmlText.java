@@ -0,0 +1,374 @@
+package com.btctech.mailapp.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * Single-pass HTML to plain text conversion.
+ * Tags are dropped, block elements become line breaks, entities are decoded
+ * and script/style/title content is skipped. Input is consumed character by
+ * character with no regex and no copy of the document, and conversion stops
+ * as soon as the requested number of characters has been produced - a
+ * preview of a 2MB newsletter reads only its first few kilobytes.
+ */
+public final class HtmlText {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_TAG_NAME = 16;
+    private static final int MAX_ENTITY = 10;
+
+    private static final String[] BLOCK_TAGS = {
+            "br", "p", "div", "tr", "li", "ul", "ol", "table", "blockquote", "pre", "hr",
+            "h1", "h2", "h3", "h4", "h5", "h6", "section", "article", "header", "footer", "dt", "dd"
+    };
+
+    // Table cells stay on one line, separated by a space
+    private static final String[] CELL_TAGS = {"td", "th"};
+
+    // Elements whose content is not text
+    private static final String[] SKIP_TAGS = {"script", "style", "title", "template"};
+
+    private static final Map<String, Character> ENTITIES = Map.ofEntries(
+            Map.entry("amp", '&'), Map.entry("lt", '<'), Map.entry("gt", '>'),
+            Map.entry("quot", '"'), Map.entry("apos", '\''), Map.entry("nbsp", '\u00A0'),
+            Map.entry("copy", '©'), Map.entry("reg", '®'), Map.entry("trade", '™'),
+            Map.entry("hellip", '…'), Map.entry("mdash", '—'), Map.entry("ndash", '–'),
+            Map.entry("lsquo", '‘'), Map.entry("rsquo", '’'), Map.entry("ldquo", '“'),
+            Map.entry("rdquo", '”'), Map.entry("bull", '•'), Map.entry("middot", '·'),
+            Map.entry("euro", '€'), Map.entry("pound", '£'), Map.entry("yen", '¥'),
+            Map.entry("cent", '¢'), Map.entry("deg", '°'), Map.entry("times", '×'),
+            Map.entry("laquo", '«'), Map.entry("raquo", '»'), Map.entry("shy", '\u00AD'),
+            Map.entry("zwnj", '\u200C'), Map.entry("zwj", '\u200D')
+    );
+
+    private HtmlText() {
+    }
+
+    /**
+     * Plain text of an HTML document, block elements on their own lines
+     */
+    public static String toText(String html) {
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        Converter converter = new Converter(true, false, Integer.MAX_VALUE);
+        for (int i = 0; i < html.length(); i++) {
+            converter.accept(html.charAt(i));
+        }
+        return converter.finish();
+    }
+
+    /**
+     * At most maxChars of single-line text (whitespace collapsed) from HTML
+     * or plain text; stops reading once enough text has been produced
+     */
+    public static String preview(Reader in, boolean html, int maxChars) throws IOException {
+        Converter converter = new Converter(html, true, maxChars);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while (!converter.isFull() && (read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read && !converter.isFull(); i++) {
+                converter.accept(buffer[i]);
+            }
+        }
+        return converter.finish();
+    }
+
+    /**
+     * At most maxChars of single-line text from already extracted plain text
+     */
+    public static String preview(String text, int maxChars) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        Converter converter = new Converter(false, true, maxChars);
+        for (int i = 0; i < text.length() && !converter.isFull(); i++) {
+            converter.accept(text.charAt(i));
+        }
+        return converter.finish();
+    }
+
+    private static boolean isInvisible(char ch) {
+        // Zero-width characters used to pad preheaders in marketing mail
+        return ch == '\u200B' || ch == '\u200C' || ch == '\u200D' || ch == '\u2060'
+                || ch == '\uFEFF' || ch == '\u00AD' || ch == '\u034F';
+    }
+
+    private static boolean contains(String[] names, CharSequence name) {
+        for (String candidate : names) {
+            if (candidate.contentEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum State {
+        TEXT, TAG_START, TAG_NAME, TAG_BODY, BANG, COMMENT, DECLARATION, ENTITY
+    }
+
+    private static final class Converter {
+        private final boolean html;
+        private final boolean singleLine;
+        private final int maxChars;
+        private final StringBuilder out = new StringBuilder();
+        private final StringBuilder token = new StringBuilder(MAX_TAG_NAME);
+
+        private State state = State.TEXT;
+        private boolean closing;
+        private char quote;
+        private int dashes;
+        private String skipping;
+        private boolean space;
+        private boolean lineBreak;
+
+        Converter(boolean html, boolean singleLine, int maxChars) {
+            this.html = html;
+            this.singleLine = singleLine;
+            this.maxChars = maxChars;
+        }
+
+        boolean isFull() {
+            return out.length() >= maxChars;
+        }
+
+        String finish() {
+            if (state == State.ENTITY) {
+                flushEntity();
+            }
+            if (out.length() > maxChars) {
+                out.setLength(maxChars);
+                while (out.length() > 0 && out.charAt(out.length() - 1) == ' ') {
+                    out.setLength(out.length() - 1);
+                }
+            }
+            return out.toString();
+        }
+
+        void accept(char ch) {
+            switch (state) {
+                case TEXT -> text(ch);
+                case TAG_START -> tagStart(ch);
+                case TAG_NAME -> tagName(ch);
+                case TAG_BODY -> tagBody(ch);
+                case BANG -> bang(ch);
+                case COMMENT -> comment(ch);
+                case DECLARATION -> {
+                    if (ch == '>') {
+                        state = State.TEXT;
+                    }
+                }
+                case ENTITY -> entity(ch);
+            }
+        }
+
+        private void text(char ch) {
+            if (!html) {
+                emit(ch);
+            } else if (ch == '<') {
+                state = State.TAG_START;
+                token.setLength(0);
+                closing = false;
+            } else if (skipping != null) {
+                // inside script/style: only a closing tag matters
+            } else if (ch == '&') {
+                state = State.ENTITY;
+                token.setLength(0);
+            } else {
+                emit(ch);
+            }
+        }
+
+        private void tagStart(char ch) {
+            if (ch == '/') {
+                closing = true;
+                state = State.TAG_NAME;
+            } else if (skipping != null) {
+                state = State.TEXT;
+            } else if (Character.isLetter(ch)) {
+                token.append(Character.toLowerCase(ch));
+                state = State.TAG_NAME;
+            } else if (ch == '!') {
+                dashes = 0;
+                state = State.BANG;
+            } else if (ch == '?') {
+                state = State.DECLARATION;
+            } else {
+                // A lone '<' in text
+                state = State.TEXT;
+                emit('<');
+                text(ch);
+            }
+        }
+
+        private void tagName(char ch) {
+            if (Character.isLetterOrDigit(ch)) {
+                if (token.length() < MAX_TAG_NAME) {
+                    token.append(Character.toLowerCase(ch));
+                }
+                return;
+            }
+            if (skipping != null && !(closing && skipping.contentEquals(token))) {
+                state = State.TEXT;
+                text(ch);
+                return;
+            }
+            quote = 0;
+            state = State.TAG_BODY;
+            tagBody(ch);
+        }
+
+        private void tagBody(char ch) {
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if (ch == '>') {
+                state = State.TEXT;
+                endTag();
+            }
+        }
+
+        private void endTag() {
+            if (skipping != null) {
+                skipping = null;
+                return;
+            }
+            if (!closing) {
+                for (String name : SKIP_TAGS) {
+                    if (name.contentEquals(token)) {
+                        skipping = name;
+                        return;
+                    }
+                }
+            }
+            if (contains(BLOCK_TAGS, token)) {
+                lineBreak = true;
+            } else if (contains(CELL_TAGS, token)) {
+                space = true;
+            }
+        }
+
+        private void bang(char ch) {
+            if (ch == '-') {
+                if (++dashes == 2) {
+                    dashes = 0;
+                    state = State.COMMENT;
+                }
+            } else {
+                state = ch == '>' ? State.TEXT : State.DECLARATION;
+            }
+        }
+
+        private void comment(char ch) {
+            if (ch == '-') {
+                dashes++;
+            } else if (ch == '>' && dashes >= 2) {
+                state = State.TEXT;
+            } else {
+                dashes = 0;
+            }
+        }
+
+        private void entity(char ch) {
+            if (ch == ';') {
+                state = State.TEXT;
+                if (!decodeEntity()) {
+                    emit('&');
+                    emitToken();
+                    emit(';');
+                }
+            } else if ((Character.isLetterOrDigit(ch) || (ch == '#' && token.length() == 0))
+                    && token.length() < MAX_ENTITY) {
+                token.append(ch);
+            } else {
+                flushEntity();
+                text(ch);
+            }
+        }
+
+        /**
+         * Entity not terminated by ';' - decoded if known (as browsers do), literal otherwise
+         */
+        private void flushEntity() {
+            state = State.TEXT;
+            if (!decodeEntity()) {
+                emit('&');
+                emitToken();
+            }
+        }
+
+        private boolean decodeEntity() {
+            if (token.length() == 0) {
+                return false;
+            }
+
+            if (token.charAt(0) == '#') {
+                int codePoint = 0;
+                boolean hex = token.length() > 1 && (token.charAt(1) == 'x' || token.charAt(1) == 'X');
+                int start = hex ? 2 : 1;
+                if (start == token.length()) {
+                    return false;
+                }
+                for (int i = start; i < token.length(); i++) {
+                    int digit = Character.digit(token.charAt(i), hex ? 16 : 10);
+                    if (digit < 0) {
+                        return false;
+                    }
+                    codePoint = codePoint * (hex ? 16 : 10) + digit;
+                }
+                if (!Character.isValidCodePoint(codePoint)) {
+                    return false;
+                }
+                if (Character.isBmpCodePoint(codePoint)) {
+                    emit((char) codePoint);
+                } else {
+                    emit(Character.highSurrogate(codePoint));
+                    emit(Character.lowSurrogate(codePoint));
+                }
+                return true;
+            }
+
+            Character decoded = ENTITIES.get(token.toString());
+            if (decoded == null) {
+                return false;
+            }
+            emit(decoded);
+            return true;
+        }
+
+        private void emitToken() {
+            for (int i = 0; i < token.length(); i++) {
+                emit(token.charAt(i));
+            }
+        }
+
+        private void emit(char ch) {
+            if (Character.isWhitespace(ch) || ch == '\u00A0') {
+                if (!html && !singleLine && ch == '\n') {
+                    lineBreak = true;
+                } else {
+                    space = true;
+                }
+                return;
+            }
+            if (isInvisible(ch)) {
+                return;
+            }
+
+            if (out.length() > 0) {
+                if (lineBreak && !singleLine) {
+                    out.append('\n');
+                } else if (space || lineBreak) {
+                    out.append(' ');
+                }
+            }
+            space = false;
+            lineBreak = false;
+            out.append(ch);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.btctech.mailapp.service;
+
+import jakarta.mail.Folder;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Store;
+import jakarta.mail.event.MailEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.IMAPStore;
+import org.eclipse.angus.mail.imap.ResyncData;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Authenticated IMAP store borrowed from {@link ImapConnectionPool}.
+ * Keeps at most one selected folder open, so switching folders reuses the
+ * same protocol connection instead of logging in again.
+ */
+@Slf4j
+public class ImapConnection implements AutoCloseable {
+
+    private final ImapConnectionPool pool;
+    private final String email;
+    private final String credential;
+    private final Store store;
+
+    private IMAPFolder folder;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private boolean invalid;
+
+    ImapConnection(ImapConnectionPool pool, String email, String credential, Store store) {
+        this.pool = pool;
+        this.email = email;
+        this.credential = credential;
+        this.store = store;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public Store getStore() {
+        return store;
+    }
+
+    /**
+     * Open (SELECT/EXAMINE) a folder, reusing the currently open one when possible.
+     * A READ_WRITE folder also satisfies READ_ONLY requests.
+     */
+    public IMAPFolder openFolder(String name, int mode) throws MessagingException {
+        if (folder != null && folder.isOpen() && folder.getFullName().equalsIgnoreCase(name)
+                && (mode == Folder.READ_ONLY || folder.getMode() == Folder.READ_WRITE)) {
+            return folder;
+        }
+
+        closeFolder();
+
+        IMAPFolder target = (IMAPFolder) store.getFolder(name);
+        target.open(mode);
+        folder = target;
+        return folder;
+    }
+
+    /**
+     * Re-SELECT a folder with CONDSTORE/QRESYNC resync data.
+     * Returns the events reported during the SELECT (e.g. vanished UIDs).
+     */
+    public List<MailEvent> reopenFolder(String name, int mode, ResyncData resyncData) throws MessagingException {
+        closeFolder();
+
+        IMAPFolder target = (IMAPFolder) store.getFolder(name);
+        List<MailEvent> events = target.open(mode, resyncData);
+        folder = target;
+        return events != null ? events : Collections.emptyList();
+    }
+
+    /**
+     * Check a server capability over the connection we already hold
+     * (the store-level check would open a second connection while a folder is selected)
+     */
+    public boolean hasCapability(String capability) throws MessagingException {
+        if (folder != null && folder.isOpen()) {
+            return (Boolean) folder.doCommand(p -> p.hasCapability(capability));
+        }
+        return ((IMAPStore) store).hasCapability(capability);
+    }
+
+    /**
+     * Mark the connection as broken so it is closed instead of pooled
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    String getCredential() {
+        return credential;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    boolean isInvalid() {
+        return invalid;
+    }
+
+    void markBorrowed() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    void markReturned() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Liveness check - NOOP over the selected folder (or the store) once the
+     * connection has been idle longer than validateAfterMs
+     */
+    boolean isUsable(long validateAfterMs) {
+        if (invalid) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastUsed < validateAfterMs) {
+            return folder == null || folder.isOpen();
+        }
+
+        try {
+            if (folder != null && folder.isOpen()) {
+                folder.doCommand(p -> {
+                    p.noop();
+                    return null;
+                });
+                return true;
+            }
+            return store.isConnected();
+        } catch (MessagingException e) {
+            log.debug("Pooled IMAP connection for {} failed NOOP: {}", email, e.getMessage());
+            return false;
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            closeFolder();
+            store.close();
+        } catch (MessagingException e) {
+            log.warn("Error closing IMAP connection: {}", e.getMessage());
+        }
+    }
+
+    private void closeFolder() throws MessagingException {
+        if (folder != null) {
+            IMAPFolder current = folder;
+            folder = null;
+            if (current.isOpen()) {
+                current.close(false);
+            }
+        }
+    }
+}
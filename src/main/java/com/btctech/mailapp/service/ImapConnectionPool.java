@@ -0,0 +1,250 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.exception.MailException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Store;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.imap.IMAPStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of authenticated IMAP stores, keyed by account email.
+ * Hot accounts reuse an open connection (and selected folder) instead of
+ * paying a TLS handshake + LOGIN on every request.
+ */
+@Slf4j
+@Service
+public class ImapConnectionPool {
+
+    @Value("${mail.imap.host}")
+    private String imapHost;
+
+    @Value("${mail.imap.port}")
+    private int imapPort;
+
+    @Value("${mail.imap.pool.max-per-account:4}")
+    private int maxPerAccount;
+
+    @Value("${mail.imap.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${mail.imap.pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${mail.imap.pool.validate-after-ms:30000}")
+    private long validateAfterMs;
+
+    @Value("${mail.imap.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    @Value("${mail.imap.fetch-size:65536}")
+    private int fetchSize;
+
+    private final Map<String, AccountPool> pools = new ConcurrentHashMap<>();
+
+    private Semaphore totalPermits;
+    private Session session;
+
+    @PostConstruct
+    void init() {
+        Properties props = new Properties();
+        props.put("mail.imap.class", IMAPStore.class.getName());
+        props.put("mail.imap.host", imapHost);
+        props.put("mail.imap.port", String.valueOf(imapPort));
+        props.put("mail.imap.ssl.enable", "true");
+        props.put("mail.imap.ssl.protocols", "TLSv1.2 TLSv1.3");
+        props.put("mail.imap.connectiontimeout", "10000");
+        props.put("mail.imap.timeout", "10000");
+        // Part content is pulled in BODY[section]<offset.size> chunks of this size
+        props.put("mail.imap.partialfetch", "true");
+        props.put("mail.imap.fetchsize", String.valueOf(fetchSize));
+        // Keep JavaMail's internal pool from logging out connections we still hold
+        props.put("mail.imap.connectionpooltimeout", String.valueOf(idleTimeoutMs));
+
+        session = Session.getInstance(props);
+        totalPermits = new Semaphore(maxTotal, true);
+
+        log.info("IMAP pool initialized: maxPerAccount={}, maxTotal={}, idleTimeout={}ms",
+                maxPerAccount, maxTotal, idleTimeoutMs);
+    }
+
+    /**
+     * Borrow a connection for the given account.
+     * Always close the returned connection (try-with-resources) to give it back.
+     */
+    public ImapConnection borrow(String email, String password) throws MessagingException {
+        // Matched by digest, so a password change never reuses a store authenticated with the old one
+        String credential = Hashes.sha256Hex(password);
+        AccountPool pool = pools.computeIfAbsent(email, k -> new AccountPool(maxPerAccount));
+
+        if (!acquire(pool.permits)) {
+            throw new MailException("Too many concurrent IMAP connections for " + email);
+        }
+
+        try {
+            // Reuse the most recently returned connection if it is still usable
+            ImapConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                if (connection.getCredential().equals(credential) && connection.isUsable(validateAfterMs)) {
+                    connection.markBorrowed();
+                    log.debug("Reusing pooled IMAP connection for {}", email);
+                    return connection;
+                }
+                destroy(connection);
+            }
+
+            // Open a new one within the global cap
+            if (!totalPermits.tryAcquire()) {
+                evictOldestIdle();
+                if (!acquire(totalPermits)) {
+                    throw new MailException("IMAP connection limit reached, try again later");
+                }
+            }
+
+            try {
+                Store store = session.getStore("imap");
+                store.connect(imapHost, imapPort, email, password);
+                log.debug("Opened new IMAP connection for {}", email);
+
+                connection = new ImapConnection(this, email, credential, store);
+                connection.markBorrowed();
+                return connection;
+            } catch (MessagingException | RuntimeException e) {
+                totalPermits.release();
+                throw e;
+            }
+        } catch (MessagingException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Called by {@link ImapConnection#close()}
+     */
+    void release(ImapConnection connection) {
+        AccountPool pool = pools.get(connection.getEmail());
+
+        if (connection.isInvalid() || pool == null) {
+            destroy(connection);
+        } else {
+            connection.markReturned();
+            pool.idle.offerFirst(connection);
+        }
+
+        if (pool != null) {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Drop all idle connections of an account (e.g. after password change)
+     */
+    public void evictAccount(String email) {
+        AccountPool pool = pools.get(email);
+        if (pool == null) {
+            return;
+        }
+
+        ImapConnection connection;
+        while ((connection = pool.idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+
+    /**
+     * Close connections that have been idle longer than the idle timeout
+     */
+    @Scheduled(fixedDelayString = "${mail.imap.pool.evict-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        for (Map.Entry<String, AccountPool> entry : pools.entrySet()) {
+            Iterator<ImapConnection> it = entry.getValue().idle.descendingIterator();
+            while (it.hasNext()) {
+                ImapConnection connection = it.next();
+                if (now - connection.getLastUsed() > idleTimeoutMs && entry.getValue().idle.remove(connection)) {
+                    destroy(connection);
+                    evicted++;
+                }
+            }
+        }
+
+        if (evicted > 0) {
+            log.debug("Evicted {} idle IMAP connections ({} still open)", evicted, getOpenCount());
+        }
+    }
+
+    public int getOpenCount() {
+        return maxTotal - totalPermits.availablePermits();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (AccountPool pool : pools.values()) {
+            ImapConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                destroy(connection);
+            }
+        }
+        log.info("IMAP pool shut down");
+    }
+
+    /**
+     * Make room under the global cap by closing the least recently used idle connection
+     */
+    private void evictOldestIdle() {
+        AccountPool oldestPool = null;
+        ImapConnection oldest = null;
+
+        for (AccountPool pool : pools.values()) {
+            ImapConnection candidate = pool.idle.peekLast();
+            if (candidate != null && (oldest == null || candidate.getLastUsed() < oldest.getLastUsed())) {
+                oldest = candidate;
+                oldestPool = pool;
+            }
+        }
+
+        if (oldest != null && oldestPool.idle.remove(oldest)) {
+            destroy(oldest);
+        }
+    }
+
+    private void destroy(ImapConnection connection) {
+        connection.closeQuietly();
+        totalPermits.release();
+    }
+
+    private boolean acquire(Semaphore semaphore) {
+        try {
+            return semaphore.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class AccountPool {
+        private final Deque<ImapConnection> idle = new ConcurrentLinkedDeque<>();
+        private final Semaphore permits;
+
+        AccountPool(int maxPerAccount) {
+            this.permits = new Semaphore(maxPerAccount, true);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.MessageActionRequest;
+import com.btctech.mailapp.dto.MessageActionResponse;
+import com.btctech.mailapp.dto.MessageActionResult;
+import com.btctech.mailapp.exception.MailException;
+import jakarta.mail.Folder;
+import jakarta.mail.MessagingException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.iap.Argument;
+import org.eclipse.angus.mail.iap.ProtocolException;
+import org.eclipse.angus.mail.iap.Response;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.protocol.BASE64MailboxEncoder;
+import org.eclipse.angus.mail.imap.protocol.FetchResponse;
+import org.eclipse.angus.mail.imap.protocol.IMAPProtocol;
+import org.eclipse.angus.mail.imap.protocol.UID;
+import org.eclipse.angus.mail.imap.protocol.UIDSet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * State changes on sets of messages (read/unread, flag, move, delete).
+ * A whole UID set becomes one UID STORE / UID MOVE command over a pooled
+ * connection, however many messages it covers; which UIDs were affected is
+ * read back from the FETCH / COPYUID responses of that same command.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailActionService {
+
+    private static final String TRASH = "Trash";
+
+    private final ImapConnectionPool connectionPool;
+    private final MessageBodyCache messageBodyCache;
+    private final MailSyncService mailSyncService;
+
+    @Value("${mail.batch.max-uids:10000}")
+    private int maxUids;
+
+    public enum Action {
+        READ, UNREAD, FLAG, UNFLAG, MOVE, DELETE
+    }
+
+    public MessageActionResponse apply(String email, String password, MessageActionRequest request) {
+        Action action = parseAction(request.getAction());
+        String folderName = request.getFolder() != null && !request.getFolder().isBlank() ? request.getFolder() : "INBOX";
+        String target = targetFolder(action, folderName, request.getTargetFolder());
+        long[] uids = parseUids(request.getUids());
+
+        log.info("{} {} messages in {} for {}", action, uids.length, folderName, email);
+
+        ImapConnection connection = null;
+
+        try {
+            connection = connectionPool.borrow(email, password);
+
+            IMAPFolder folder = connection.openFolder(folderName, Folder.READ_WRITE);
+            long uidValidity = folder.getUIDValidity();
+            if (request.getUidValidity() != null && request.getUidValidity() != uidValidity) {
+                throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please refresh the inbox.");
+            }
+
+            String uidSet = UIDSet.toString(UIDSet.createUIDSets(uids));
+
+            @SuppressWarnings("unchecked")
+            Map<Long, Long> done = (Map<Long, Long>) folder.doCommand(p -> switch (action) {
+                case READ -> store(p, uidSet, "+FLAGS", "\\Seen");
+                case UNREAD -> store(p, uidSet, "-FLAGS", "\\Seen");
+                case FLAG -> store(p, uidSet, "+FLAGS", "\\Flagged");
+                case UNFLAG -> store(p, uidSet, "-FLAGS", "\\Flagged");
+                case MOVE -> move(p, uidSet, uids, target);
+                case DELETE -> target != null ? move(p, uidSet, uids, target) : expunge(p, uidSet);
+            });
+
+            // Flags are not cached, but moved and expunged messages are gone from this folder
+            if (action == Action.MOVE || action == Action.DELETE) {
+                messageBodyCache.remove(email, folderName, uidValidity, done.keySet());
+            }
+            mailSyncService.markStale(email, folderName);
+            if (target != null) {
+                mailSyncService.markStale(email, target);
+            }
+
+            List<MessageActionResult> results = new ArrayList<>(uids.length);
+            for (long uid : uids) {
+                boolean success = done.containsKey(uid);
+                Long newUid = done.get(uid);
+                results.add(MessageActionResult.builder()
+                        .uid(String.valueOf(uid))
+                        .success(success)
+                        .newUid(newUid != null ? String.valueOf(newUid) : null)
+                        .error(success ? null : "Message not found")
+                        .build());
+            }
+
+            log.info("✓ {} applied to {}/{} messages in {} for {}", action, done.size(), uids.length, folderName, email);
+
+            return MessageActionResponse.builder()
+                    .action(action.name())
+                    .folder(folderName)
+                    .targetFolder(target)
+                    .uidValidity(uidValidity)
+                    .requested(uids.length)
+                    .succeeded(done.size())
+                    .results(results)
+                    .build();
+
+        } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to apply {} in {}: {}", action, folderName, e.getMessage(), e);
+            throw new MailException("Failed to update messages: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static Action parseAction(String action) {
+        try {
+            return Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new MailException("Unknown action: " + action);
+        }
+    }
+
+    /**
+     * Destination of MOVE, or of DELETE outside the Trash (null = delete for good)
+     */
+    private static String targetFolder(Action action, String folderName, String requested) {
+        if (action == Action.MOVE) {
+            if (requested == null || requested.isBlank()) {
+                throw new MailException("Target folder is required for MOVE");
+            }
+            if (requested.equalsIgnoreCase(folderName)) {
+                throw new MailException("Target folder is the same as the source folder");
+            }
+            return requested;
+        }
+        if (action == Action.DELETE && !TRASH.equalsIgnoreCase(folderName)) {
+            return TRASH;
+        }
+        return null;
+    }
+
+    private long[] parseUids(List<String> uids) {
+        TreeSet<Long> unique = new TreeSet<>();
+        for (String uid : uids) {
+            unique.add(MailReceiveService.parseUid(uid));
+        }
+        if (unique.size() > maxUids) {
+            throw new MailException("Too many messages in one request (max " + maxUids + ")");
+        }
+
+        long[] sorted = new long[unique.size()];
+        int i = 0;
+        for (long uid : unique) {
+            sorted[i++] = uid;
+        }
+        return sorted;
+    }
+
+    /**
+     * UID STORE over the whole set; the FETCH responses name the UIDs that exist
+     */
+    private static Map<Long, Long> store(IMAPProtocol protocol, String uidSet, String operation, String flag)
+            throws ProtocolException {
+        Argument args = new Argument();
+        args.writeAtom(uidSet);
+        args.writeAtom(operation);
+        args.writeArgument(new Argument().writeAtom(flag));
+
+        Response[] responses = protocol.command("UID STORE", args);
+
+        Map<Long, Long> done = new HashMap<>();
+        for (Response response : responses) {
+            if (response instanceof FetchResponse) {
+                UID uid = ((FetchResponse) response).getItem(UID.class);
+                if (uid != null) {
+                    done.put(uid.uid, null);
+                }
+            }
+        }
+
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(responses[responses.length - 1]);
+        return done;
+    }
+
+    /**
+     * UID MOVE (RFC 6851), or UID COPY + \Deleted + UID EXPUNGE where MOVE is
+     * not supported. COPYUID maps each moved UID to its UID in the target.
+     */
+    private static Map<Long, Long> move(IMAPProtocol protocol, String uidSet, long[] uids, String target)
+            throws ProtocolException {
+        boolean hasMove = protocol.hasCapability("MOVE");
+
+        Argument args = new Argument();
+        args.writeAtom(uidSet);
+        args.writeString(protocol.supportsUtf8() ? target : BASE64MailboxEncoder.encode(target), StandardCharsets.UTF_8);
+
+        Response[] responses = protocol.command(hasMove ? "UID MOVE" : "UID COPY", args);
+        Map<Long, Long> done = copyUid(responses);
+
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(responses[responses.length - 1]);
+
+        if (done == null) {
+            // Server without UIDPLUS: it succeeded, but does not say for which UIDs
+            done = new HashMap<>();
+            for (long uid : uids) {
+                done.put(uid, null);
+            }
+        }
+
+        if (!hasMove) {
+            expunge(protocol, uidSet);
+        }
+        return done;
+    }
+
+    /**
+     * Mark \Deleted and expunge exactly these UIDs (UID EXPUNGE, RFC 4315)
+     */
+    private static Map<Long, Long> expunge(IMAPProtocol protocol, String uidSet) throws ProtocolException {
+        Map<Long, Long> done = store(protocol, uidSet, "+FLAGS", "\\Deleted");
+
+        if (protocol.hasCapability("UIDPLUS")) {
+            protocol.uidexpunge(UIDSet.parseUIDSets(uidSet));
+        } else {
+            // A plain EXPUNGE would also remove messages other clients marked \Deleted
+            log.warn("Server lacks UIDPLUS - messages marked \\Deleted but not expunged");
+        }
+        return done;
+    }
+
+    /**
+     * Source UID -> target UID from a [COPYUID validity src dst] response code, or null if none
+     */
+    private static Map<Long, Long> copyUid(Response[] responses) {
+        for (Response response : responses) {
+            if (!response.isOK()) {
+                continue;
+            }
+            String rest = response.getRest();
+            int start = rest.indexOf("[COPYUID ");
+            int end = start >= 0 ? rest.indexOf(']', start) : -1;
+            if (end < 0) {
+                continue;
+            }
+
+            String[] fields = rest.substring(start + "[COPYUID ".length(), end).trim().split(" ");
+            if (fields.length != 3) {
+                continue;
+            }
+            long[] source = UIDSet.toArray(UIDSet.parseUIDSets(fields[1]));
+            long[] copied = UIDSet.toArray(UIDSet.parseUIDSets(fields[2]));
+
+            Map<Long, Long> done = new HashMap<>();
+            for (int i = 0; i < source.length && i < copied.length; i++) {
+                done.put(source[i], copied[i]);
+            }
+            return done;
+        }
+        return null;
+    }
+}
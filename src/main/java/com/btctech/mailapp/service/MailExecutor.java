@@ -0,0 +1,323 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.exception.MailException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs IMAP/SMTP work off the servlet request threads.
+ * Controllers hand the blocking part of a request to submit() and return the
+ * future, so a slow mail server only ties up mail I/O threads - never the
+ * Tomcat workers that serve login and everything else.
+ *
+ * Work is admitted through two bulkheads, each a running limit plus a short
+ * FIFO of waiting tasks: one per account (a heavy mailbox queues behind its
+ * own limit instead of taking every slot) and one overall. A task that finds
+ * a queue full, or waited longer than queue-timeout-ms, fails at once rather
+ * than piling up. Tasks run on a fixed platform thread pool, or on one
+ * virtual thread each when mail.executor.virtual-threads is set and the
+ * runtime has them (Java 21+).
+ */
+@Slf4j
+@Service
+public class MailExecutor {
+
+    @Value("${mail.executor.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${mail.executor.max-concurrent:64}")
+    private int maxConcurrent;
+
+    @Value("${mail.executor.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${mail.executor.per-account.max-concurrent:4}")
+    private int maxPerAccount;
+
+    @Value("${mail.executor.per-account.queue-capacity:20}")
+    private int perAccountQueueCapacity;
+
+    @Value("${mail.executor.queue-timeout-ms:30000}")
+    private long queueTimeoutMs;
+
+    private final Map<String, Bulkhead> accounts = new ConcurrentHashMap<>();
+
+    private Bulkhead global;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        global = new Bulkhead(maxConcurrent, queueCapacity);
+
+        executor = virtualThreads ? virtualThreadExecutor() : null;
+        boolean virtual = executor != null;
+        if (!virtual) {
+            // The global bulkhead never lets more than maxConcurrent tasks reach the pool
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(maxConcurrent, task -> {
+                Thread thread = new Thread(task, "mail-io-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        log.info("Mail executor initialized: {} threads, maxConcurrent={}, perAccount={}, queue={}/{}",
+                virtual ? "virtual" : "platform",
+                maxConcurrent, maxPerAccount, queueCapacity, perAccountQueueCapacity);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run blocking mail work for the account. The fallback produces the
+     * result instead when the work is refused (the account or the server is
+     * saturated, a MailException) or throws.
+     */
+    public <T> CompletableFuture<T> submit(String email, Callable<T> work, Function<Throwable, ? extends T> fallback) {
+        Task<T> task = new Task<>(email.toLowerCase(Locale.ROOT), work);
+        admit(task);
+        return task.future.exceptionally(fallback);
+    }
+
+    /**
+     * Run blocking mail work for the account on the calling thread, once it
+     * holds the same account and global slots a submitted task would. For
+     * work that cannot move threads, such as writing a streamed response.
+     * Throws a MailException when refused or after queue-timeout-ms.
+     */
+    public <T> T call(String email, Callable<T> work) throws Exception {
+        Task<Void> slots = new Task<>(email.toLowerCase(Locale.ROOT), null);
+        admit(slots);
+
+        try {
+            slots.future.get(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof Exception refused ? refused : e;
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Slots granted from now on are handed straight back; ones granted just now are released here
+            if (!slots.future.completeExceptionally(e)) {
+                releaseGlobal();
+                releaseAccount(slots.account);
+            }
+            throw new MailException("Mail server busy, try again shortly");
+        }
+
+        try {
+            return work.call();
+        } finally {
+            releaseGlobal();
+            releaseAccount(slots.account);
+        }
+    }
+
+    private void admit(Task<?> task) {
+        Admission[] admission = new Admission[1];
+        accounts.compute(task.account, (key, bulkhead) -> {
+            if (bulkhead == null) {
+                bulkhead = new Bulkhead(maxPerAccount, perAccountQueueCapacity);
+            }
+            admission[0] = bulkhead.admit(task::acquireGlobal);
+            return bulkhead;
+        });
+
+        if (admission[0] == Admission.RUN) {
+            task.acquireGlobal();
+        } else if (admission[0] == Admission.REJECTED) {
+            log.warn("Rejected mail task for {}: account queue full", task.account);
+            task.future.completeExceptionally(
+                    new MailException("Too many requests in progress for this mailbox, try again shortly"));
+        }
+    }
+
+    /**
+     * The exception a failed future was completed with
+     */
+    public static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            // Java 21 API, looked up at runtime so the build stays on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on Java {} - using a platform thread pool",
+                    Runtime.version().feature());
+            return null;
+        }
+    }
+
+    private void releaseAccount(String account) {
+        Runnable[] next = new Runnable[1];
+        accounts.computeIfPresent(account, (key, bulkhead) -> {
+            next[0] = bulkhead.release();
+            return bulkhead.isIdle() ? null : bulkhead;
+        });
+        if (next[0] != null) {
+            next[0].run();
+        }
+    }
+
+    private void releaseGlobal() {
+        Runnable next;
+        synchronized (global) {
+            next = global.release();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * A submitted piece of work, or (without work) the slots for call()
+     */
+    private final class Task<T> {
+        private final String account;
+        private final Callable<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submittedAt = System.currentTimeMillis();
+
+        Task(String account, Callable<T> work) {
+            this.account = account;
+            this.work = work;
+        }
+
+        /**
+         * Holds an account slot; now needs one of the global slots
+         */
+        void acquireGlobal() {
+            Admission admission;
+            synchronized (global) {
+                admission = global.admit(this::execute);
+            }
+
+            if (admission == Admission.RUN) {
+                execute();
+            } else if (admission == Admission.REJECTED) {
+                log.warn("Rejected mail task for {}: executor queue full", account);
+                releaseAccount(account);
+                future.completeExceptionally(new MailException("Mail server busy, try again shortly"));
+            }
+        }
+
+        /**
+         * Holds both slots
+         */
+        void execute() {
+            if (work == null) {
+                // The thread in call() runs the work itself - unless it has given up waiting
+                if (!future.complete(null)) {
+                    releaseGlobal();
+                    releaseAccount(account);
+                }
+                return;
+            }
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException e) {
+                releaseGlobal();
+                releaseAccount(account);
+                future.completeExceptionally(new MailException("Mail executor is shutting down"));
+            }
+        }
+
+        private void run() {
+            try {
+                if (future.isDone()) {
+                    return;
+                }
+                if (System.currentTimeMillis() - submittedAt > queueTimeoutMs) {
+                    // The client has most likely given up by now
+                    future.completeExceptionally(new MailException("Mail server busy, try again shortly"));
+                    return;
+                }
+                future.complete(work.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                releaseGlobal();
+                releaseAccount(account);
+            }
+        }
+    }
+
+    private enum Admission {
+        RUN, QUEUED, REJECTED
+    }
+
+    /**
+     * Running count plus a bounded FIFO of tasks waiting for a slot.
+     * Not thread-safe - callers synchronize.
+     */
+    private static final class Bulkhead {
+        private final int maxRunning;
+        private final int maxWaiting;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        Bulkhead(int maxRunning, int maxWaiting) {
+            this.maxRunning = maxRunning;
+            this.maxWaiting = maxWaiting;
+        }
+
+        Admission admit(Runnable start) {
+            if (running < maxRunning) {
+                running++;
+                return Admission.RUN;
+            }
+            if (waiting.size() < maxWaiting) {
+                waiting.addLast(start);
+                return Admission.QUEUED;
+            }
+            return Admission.REJECTED;
+        }
+
+        /**
+         * Free a slot, or hand it straight to the next waiting task (returned for the caller to start)
+         */
+        Runnable release() {
+            Runnable next = waiting.pollFirst();
+            if (next == null) {
+                running--;
+            }
+            return next;
+        }
+
+        boolean isIdle() {
+            return running == 0 && waiting.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.InboxCursor;
+import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.dto.SearchResponse;
+import com.btctech.mailapp.dto.ThreadDTO;
+import com.btctech.mailapp.dto.ThreadListResponse;
+import com.btctech.mailapp.entity.Mail;
+import com.btctech.mailapp.entity.MailFolder;
+import com.btctech.mailapp.exception.MailException;
+import com.btctech.mailapp.repository.MailFolderRepository;
+import com.btctech.mailapp.repository.MailRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves mailbox listings from the local metadata index instead of IMAP.
+ * The folder is brought up to date by MailSyncService first (throttled),
+ * after which a page is a single indexed SQL query.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailIndexService {
+
+    private static final int MAX_PARTICIPANTS = 5;
+
+    private static final Comparator<Mail> BY_DATE = Comparator
+            .comparing(Mail::getReceivedDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Mail::getId);
+
+    private final MailSyncService mailSyncService;
+    private final MailRepository mailRepository;
+    private final MailFolderRepository folderRepository;
+    private final MailSearchService mailSearchService;
+    private final MailThreadService mailThreadService;
+    private final MailReceiveService mailReceiveService;
+
+    @Value("${mail.index.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get one page of a folder's emails from the index, newest first
+     */
+    public InboxResponse getMessages(String email, String password, String folderName, int limit, String cursor) {
+        MailFolder folder = mailSyncService.syncIfStale(email, password, folderName);
+        if (folder == null) {
+            // Still being indexed - IMAP pages use the same cursors
+            return mailReceiveService.getMessages(email, password, folderName, limit, cursor);
+        }
+
+        InboxCursor after = cursor != null && !cursor.isEmpty() ? InboxCursor.decode(cursor) : null;
+        if (after != null && after.getUidValidity() != folder.getUidValidity()) {
+            throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please reload from the first page.");
+        }
+
+        // Fetch one extra row to know whether another page exists
+        long belowUid = after != null ? after.getLastUid() : Long.MAX_VALUE;
+        List<Mail> rows = mailRepository.findByFolderIdAndUidLessThanOrderByUidDesc(
+                folder.getId(), belowUid, PageRequest.of(0, limit + 1));
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+
+        List<EmailDTO> emails = new ArrayList<>(rows.size());
+        for (Mail mail : rows) {
+            emails.add(toDTO(mail, folder.getUidValidity()));
+        }
+
+        String nextCursor = hasMore
+                ? new InboxCursor(folder.getUidValidity(), rows.get(rows.size() - 1).getUid()).encode()
+                : null;
+
+        log.debug("Served {} emails of {} for {} from index", emails.size(), folderName, email);
+
+        return InboxResponse.builder()
+                .email(email)
+                .folder(folderName)
+                .totalCount(folder.getTotalCount())
+                .unreadCount(folder.getUnreadCount())
+                .uidValidity(folder.getUidValidity())
+                .uidNext(folder.getUidNext() != null ? folder.getUidNext() : 0)
+                .emails(emails)
+                .hasMore(hasMore)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private MailFolder requireIndexed(String email, String password, String folderName) {
+        MailFolder folder = mailSyncService.syncIfStale(email, password, folderName);
+        if (folder == null) {
+            throw new MailException("Mailbox is still being indexed, please try again shortly");
+        }
+        return folder;
+    }
+
+    /**
+     * Full-text search of a folder, best match first.
+     * Ranking comes from the search index; the rows come from the local mail index.
+     */
+    public SearchResponse search(String email, String password, String folderName, String query, int page, int size) {
+        if (query == null || query.isBlank()) {
+            throw new MailException("Search query is required");
+        }
+        if (!mailSearchService.isEnabled()) {
+            throw new MailException("Search is disabled");
+        }
+
+        MailFolder folder = requireIndexed(email, password, folderName);
+        long uidValidity = folder.getUidValidity();
+
+        // Mail synced before it could be indexed: index its stored headers (no IMAP)
+        if (mailSearchService.size(email, folderName, uidValidity) < mailRepository.countByFolderId(folder.getId())) {
+            for (Mail mail : mailRepository.findByFolderId(folder.getId())) {
+                mailSearchService.indexHeaders(email, folderName, uidValidity, mail.getUid(),
+                        mail.getSubject(), mail.getFromAddress(), mail.getToAddress(), mail.getCcAddress());
+            }
+        }
+
+        List<Long> ranked = mailSearchService.search(email, folderName, uidValidity, query);
+
+        int from = Math.min(page * size, ranked.size());
+        List<Long> pageUids = ranked.subList(from, Math.min(from + size, ranked.size()));
+
+        Map<Long, Mail> rows = new HashMap<>();
+        if (!pageUids.isEmpty()) {
+            for (Mail mail : mailRepository.findByFolderIdAndUidIn(folder.getId(), pageUids)) {
+                rows.put(mail.getUid(), mail);
+            }
+        }
+
+        List<EmailDTO> emails = new ArrayList<>(pageUids.size());
+        for (Long uid : pageUids) {
+            Mail mail = rows.get(uid);
+            if (mail != null) {
+                emails.add(toDTO(mail, uidValidity));
+            }
+        }
+
+        log.debug("Search '{}' in {}/{}: {} hits", query, email, folderName, ranked.size());
+
+        return SearchResponse.builder()
+                .query(query)
+                .folder(folderName)
+                .totalHits(ranked.size())
+                .page(page)
+                .size(size)
+                .hasMore(from + size < ranked.size())
+                .emails(emails)
+                .build();
+    }
+
+    /**
+     * One page of conversations with a message in the folder, latest activity first
+     */
+    public ThreadListResponse getThreads(String email, String password, String folderName, int page, int size) {
+        MailFolder folder = requireIndexed(email, password, folderName);
+        Long accountId = folder.getMailAccountId();
+        if (mailRepository.existsByMailAccountIdAndThreadIdIsNull(accountId)) {
+            mailThreadService.backfill(accountId);
+        }
+
+        List<MailRepository.ThreadRow> rows = mailRepository.findThreadsByFolder(
+                accountId, folder.getId(), PageRequest.of(page, size));
+        // Page index with size 1 is an offset: is there a thread right after this page?
+        boolean hasMore = rows.size() == size && !mailRepository.findThreadsByFolder(
+                accountId, folder.getId(), PageRequest.of((page + 1) * size, 1)).isEmpty();
+
+        Map<String, List<Mail>> members = new HashMap<>();
+        if (!rows.isEmpty()) {
+            List<String> threadIds = new ArrayList<>(rows.size());
+            for (MailRepository.ThreadRow row : rows) {
+                threadIds.add(row.getThreadId());
+            }
+            for (Mail mail : mailRepository.findByMailAccountIdAndThreadIdIn(accountId, threadIds)) {
+                members.computeIfAbsent(mail.getThreadId(), k -> new ArrayList<>()).add(mail);
+            }
+        }
+
+        List<ThreadDTO> threads = new ArrayList<>(rows.size());
+        for (MailRepository.ThreadRow row : rows) {
+            List<Mail> mails = members.getOrDefault(row.getThreadId(), new ArrayList<>());
+            mails.sort(BY_DATE);
+            threads.add(toThread(row.getThreadId(), mails, (int) row.getUnreadCount()));
+        }
+
+        log.debug("Served {} threads of {} for {} from index", threads.size(), folderName, email);
+
+        return ThreadListResponse.builder()
+                .email(email)
+                .folder(folderName)
+                .page(page)
+                .size(size)
+                .hasMore(hasMore)
+                .threads(threads)
+                .build();
+    }
+
+    /**
+     * All indexed messages of a conversation (any folder), oldest first
+     */
+    public ThreadDTO getThread(String email, String password, String threadId) {
+        MailFolder inbox = requireIndexed(email, password, "INBOX");
+        Long accountId = inbox.getMailAccountId();
+
+        List<Mail> mails = mailRepository.findByMailAccountIdAndThreadIdOrderByReceivedDateAscIdAsc(accountId, threadId);
+        if (mails.isEmpty()) {
+            throw new MailException("Thread not found");
+        }
+
+        Map<Long, MailFolder> folders = new HashMap<>();
+        for (MailFolder folder : folderRepository.findByMailAccountId(accountId)) {
+            folders.put(folder.getId(), folder);
+        }
+
+        int unread = 0;
+        List<EmailDTO> messages = new ArrayList<>(mails.size());
+        for (Mail mail : mails) {
+            MailFolder folder = folders.get(mail.getFolderId());
+            EmailDTO dto = toDTO(mail, folder != null && folder.getUidValidity() != null ? folder.getUidValidity() : 0);
+            dto.setFolder(folder != null ? folder.getName() : null);
+            messages.add(dto);
+            if (!Boolean.TRUE.equals(mail.getIsRead())) {
+                unread++;
+            }
+        }
+
+        ThreadDTO thread = toThread(threadId, mails, unread);
+        thread.setMessages(messages);
+        return thread;
+    }
+
+    /**
+     * Summary of a thread from its messages (sorted oldest first)
+     */
+    private ThreadDTO toThread(String threadId, List<Mail> mails, int unread) {
+        Set<String> participants = new LinkedHashSet<>();
+        boolean hasAttachments = false;
+        for (Mail mail : mails) {
+            if (mail.getFromAddress() != null && participants.size() < MAX_PARTICIPANTS) {
+                participants.add(mail.getFromAddress());
+            }
+            hasAttachments |= Boolean.TRUE.equals(mail.getHasAttachments());
+        }
+
+        Mail first = mails.isEmpty() ? null : mails.get(0);
+        Mail latest = mails.isEmpty() ? null : mails.get(mails.size() - 1);
+
+        return ThreadDTO.builder()
+                .threadId(threadId)
+                .subject(first != null ? first.getSubject() : null)
+                .messageCount(mails.size())
+                .unreadCount(unread)
+                .participants(new ArrayList<>(participants))
+                .latestDate(latest != null ? toDate(latest.getReceivedDate()) : null)
+                .preview(latest != null ? latest.getPreview() : null)
+                .hasAttachments(hasAttachments)
+                .build();
+    }
+
+    private EmailDTO toDTO(Mail mail, long uidValidity) {
+        String to = mail.getToAddress();
+        if (to != null && to.contains(",")) {
+            to = to.substring(0, to.indexOf(',')).trim();
+        }
+
+        return EmailDTO.builder()
+                .uid(String.valueOf(mail.getUid()))
+                .uidValidity(uidValidity)
+                .messageId(mail.getMessageId())
+                .threadId(mail.getThreadId())
+                .from(mail.getFromAddress())
+                .to(to)
+                .subject(mail.getSubject())
+                .preview(mail.getPreview())
+                .sentDate(toDate(mail.getSentDate()))
+                .receivedDate(toDate(mail.getReceivedDate()))
+                .isRead(Boolean.TRUE.equals(mail.getIsRead()))
+                .hasAttachments(Boolean.TRUE.equals(mail.getHasAttachments()))
+                .size(mail.getSizeBytes() != null ? mail.getSizeBytes().intValue() : 0)
+                .build();
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return dateTime != null ? Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+}
@@ -0,0 +1,457 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.MailboxEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.*;
+import jakarta.mail.event.MessageChangedEvent;
+import jakarta.mail.event.MessageChangedListener;
+import jakarta.mail.event.MessageCountEvent;
+import jakarta.mail.event.MessageCountListener;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.IMAPStore;
+import org.eclipse.angus.mail.imap.MessageVanishedEvent;
+import org.eclipse.angus.mail.imap.protocol.Status;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * New-mail push over Server-Sent Events.
+ *
+ * One watcher per account with at least one open SSE stream. Watchers hold
+ * a dedicated IMAP IDLE connection while slots are available; beyond the
+ * configured limit (or when the server lacks IDLE) they fall back to
+ * polling STATUS over the shared connection pool. The scheduler only
+ * triggers IDLE renewals and polls; the IMAP work itself runs on the
+ * MailExecutor, within the account's and the global limits.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailPushService {
+
+    private static final String FOLDER = "INBOX";
+
+    private final ImapConnectionPool connectionPool;
+    private final MailSyncService mailSyncService;
+    private final MailExecutor mailExecutor;
+
+    @Value("${mail.imap.host}")
+    private String imapHost;
+
+    @Value("${mail.imap.port}")
+    private int imapPort;
+
+    @Value("${mail.push.max-idle-connections:50}")
+    private int maxIdleConnections;
+
+    @Value("${mail.push.poll-interval-ms:30000}")
+    private long pollIntervalMs;
+
+    @Value("${mail.push.idle-renew-ms:600000}")
+    private long idleRenewMs;
+
+    @Value("${mail.push.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    private final Map<String, Watcher> watchers = new ConcurrentHashMap<>();
+
+    private Semaphore idleSlots;
+    private Session idleSession;
+    private ExecutorService idleExecutor;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        // IDLE reads block until the next renewal; only a dead peer stays silent for twice that
+        Properties props = new Properties();
+        props.put("mail.imap.class", IMAPStore.class.getName());
+        props.put("mail.imap.ssl.enable", "true");
+        props.put("mail.imap.ssl.protocols", "TLSv1.2 TLSv1.3");
+        props.put("mail.imap.connectiontimeout", "10000");
+        props.put("mail.imap.timeout", String.valueOf(idleRenewMs * 2));
+
+        idleSession = Session.getInstance(props);
+        idleSlots = new Semaphore(maxIdleConnections);
+        idleExecutor = Executors.newCachedThreadPool(daemonThreads("imap-idle-"));
+        scheduler = Executors.newScheduledThreadPool(2, daemonThreads("imap-push-"));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchers.values().forEach(Watcher::stop);
+        idleExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Open an SSE stream of mailbox events for the account
+     */
+    public SseEmitter subscribe(String email, String password) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+
+        // Added under the map lock, so unsubscribe cannot stop the watcher in between
+        Watcher watcher = watchers.compute(email, (key, existing) -> {
+            if (existing != null && existing.running) {
+                existing.emitters.add(emitter);
+                return existing;
+            }
+            Watcher created = new Watcher(email, password);
+            if (existing != null) {
+                created.emitters.addAll(existing.emitters);
+            }
+            created.emitters.add(emitter);
+            created.start();
+            return created;
+        });
+
+        Runnable remove = () -> unsubscribe(email, watcher, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        log.info("SSE subscriber added for {} ({} open, mode={})",
+                email, watcher.emitters.size(), watcher.idleMode ? "IDLE" : "POLL");
+        return emitter;
+    }
+
+    public int getIdleConnectionCount() {
+        return maxIdleConnections - idleSlots.availablePermits();
+    }
+
+    /**
+     * Keep proxies from closing quiet streams
+     */
+    @Scheduled(fixedDelayString = "${mail.push.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Watcher watcher : watchers.values()) {
+            for (SseEmitter emitter : watcher.emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("keepalive"));
+                } catch (IOException | IllegalStateException e) {
+                    unsubscribe(watcher.email, watcher, emitter);
+                }
+            }
+        }
+    }
+
+    private void unsubscribe(String email, Watcher watcher, SseEmitter emitter) {
+        Watcher[] emptied = new Watcher[1];
+        // The emitter may have moved on to a watcher that replaced a dead one
+        watchers.computeIfPresent(email, (key, current) -> {
+            if (!current.emitters.remove(emitter) && current != watcher) {
+                return current;
+            }
+            if (current.emitters.isEmpty()) {
+                emptied[0] = current;
+                return null;
+            }
+            return current;
+        });
+        watcher.emitters.remove(emitter);
+
+        if (emptied[0] != null) {
+            // Out of the map lock: closing the store talks to the server
+            emptied[0].stop();
+            log.info("Last SSE subscriber gone for {} - watcher stopped", email);
+        }
+    }
+
+    private void publish(Watcher watcher, MailboxEvent.Type type, List<Long> uids, int messageCount) {
+        MailboxEvent event = MailboxEvent.builder()
+                .type(type)
+                .email(watcher.email)
+                .folder(FOLDER)
+                .uids(uids)
+                .messageCount(messageCount)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        // Index readers must not serve the pre-change snapshot
+        mailSyncService.markStale(watcher.email, FOLDER);
+
+        for (SseEmitter emitter : watcher.emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(type.name()).data(event));
+            } catch (IOException | IllegalStateException e) {
+                unsubscribe(watcher.email, watcher, emitter);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Watches one account's inbox, either by IDLE or by polling
+     */
+    private class Watcher {
+        private final String email;
+        private final String password;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        private volatile boolean running = true;
+        private volatile boolean idleMode;
+        private volatile IMAPStore store;
+        private volatile IMAPFolder folder;
+        private ScheduledFuture<?> scheduled;
+
+        // A renewal or poll submitted to the MailExecutor and not finished yet
+        private final AtomicBoolean working = new AtomicBoolean();
+
+        // Polling state
+        private long lastUidNext = -1;
+        private int lastMessages = -1;
+        private int lastUnseen = -1;
+
+        Watcher(String email, String password) {
+            this.email = email;
+            this.password = password;
+        }
+
+        void start() {
+            if (idleSlots.tryAcquire()) {
+                idleMode = true;
+                idleExecutor.submit(this::idleLoop);
+            } else {
+                startPolling();
+            }
+        }
+
+        synchronized void stop() {
+            running = false;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            closeStore();
+        }
+
+        private synchronized void startPolling() {
+            idleMode = false;
+            if (running) {
+                scheduled = scheduler.scheduleWithFixedDelay(() -> submit(this::poll), 0, pollIntervalMs,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * IDLE until something happens, re-entering after each server response.
+         * A periodic NOOP from the scheduler renews the IDLE before server timeouts.
+         */
+        private void idleLoop() {
+            try {
+                connect();
+                if (!(Boolean) folder.doCommand(p -> p.hasCapability("IDLE"))) {
+                    log.info("Server has no IDLE - polling for {}", email);
+                    closeStore();
+                    idleSlots.release();
+                    startPolling();
+                    return;
+                }
+
+                synchronized (this) {
+                    if (running) {
+                        scheduled = scheduler.scheduleWithFixedDelay(() -> submit(this::renewIdle),
+                                idleRenewMs, idleRenewMs, TimeUnit.MILLISECONDS);
+                    }
+                }
+
+                int failures = 0;
+                while (running) {
+                    try {
+                        folder.idle();
+                        failures = 0;
+                    } catch (FolderClosedException | StoreClosedException e) {
+                        if (!running) {
+                            break;
+                        }
+                        failures++;
+                        log.warn("IDLE connection lost for {} ({}), reconnecting", email, e.getMessage());
+                        Thread.sleep(Math.min(60000L, 1000L << Math.min(failures, 6)));
+                        closeStore();
+                        connect();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("IDLE watcher failed for {}: {} - falling back to polling", email, e.getMessage());
+                    closeStore();
+                    idleSlots.release();
+                    startPolling();
+                    return;
+                }
+            }
+
+            closeStore();
+            idleSlots.release();
+        }
+
+        private void connect() throws MessagingException {
+            IMAPStore newStore = (IMAPStore) idleSession.getStore("imap");
+            newStore.connect(imapHost, imapPort, email, password);
+
+            IMAPFolder newFolder = (IMAPFolder) newStore.getFolder(FOLDER);
+            newFolder.open(Folder.READ_ONLY);
+
+            newFolder.addMessageCountListener(new MessageCountListener() {
+                @Override
+                public void messagesAdded(MessageCountEvent event) {
+                    publish(Watcher.this, MailboxEvent.Type.NEW_MESSAGE,
+                            uidsOf(newFolder, event.getMessages()), messageCount(newFolder));
+                }
+
+                @Override
+                public void messagesRemoved(MessageCountEvent event) {
+                    List<Long> uids = new ArrayList<>();
+                    if (event instanceof MessageVanishedEvent) {
+                        for (long uid : ((MessageVanishedEvent) event).getUIDs()) {
+                            uids.add(uid);
+                        }
+                    }
+                    publish(Watcher.this, MailboxEvent.Type.EXPUNGED, uids, messageCount(newFolder));
+                }
+            });
+
+            newFolder.addMessageChangedListener(new MessageChangedListener() {
+                @Override
+                public void messageChanged(MessageChangedEvent event) {
+                    if (event.getMessageChangeType() == MessageChangedEvent.FLAGS_CHANGED) {
+                        publish(Watcher.this, MailboxEvent.Type.FLAGS_CHANGED,
+                                uidsOf(newFolder, new Message[]{event.getMessage()}), messageCount(newFolder));
+                    }
+                }
+            });
+
+            store = newStore;
+            folder = newFolder;
+            log.debug("IDLE connection opened for {}", email);
+        }
+
+        /**
+         * Run a renewal or poll on the MailExecutor, unless the previous one is still going
+         */
+        private void submit(Runnable work) {
+            if (!running || !working.compareAndSet(false, true)) {
+                return;
+            }
+            mailExecutor.<Void>submit(email, () -> {
+                work.run();
+                return null;
+            }, e -> {
+                log.debug("Push work for {} refused: {}", email, MailExecutor.unwrap(e).getMessage());
+                return null;
+            }).whenComplete((result, e) -> working.set(false));
+        }
+
+        /**
+         * Any command on the folder ends the current IDLE; the loop then re-issues it
+         */
+        private void renewIdle() {
+            IMAPFolder current = folder;
+            if (current == null || !running) {
+                return;
+            }
+            try {
+                current.doCommand(p -> {
+                    p.noop();
+                    return null;
+                });
+            } catch (MessagingException e) {
+                log.debug("IDLE renew failed for {}: {}", email, e.getMessage());
+            }
+        }
+
+        /**
+         * Fallback: STATUS over a pooled connection, diffed against the last poll
+         */
+        private void poll() {
+            if (!running) {
+                return;
+            }
+
+            try (ImapConnection connection = connectionPool.borrow(email, password)) {
+                IMAPFolder pooled = connection.openFolder(FOLDER, Folder.READ_ONLY);
+                Status status = (Status) pooled.doCommand(p ->
+                        p.status(FOLDER, new String[]{"MESSAGES", "UIDNEXT", "UNSEEN"}));
+
+                if (lastUidNext >= 0) {
+                    if (status.uidnext > lastUidNext) {
+                        List<Long> uids = new ArrayList<>();
+                        for (long uid = lastUidNext; uid < status.uidnext && uids.size() < 1000; uid++) {
+                            uids.add(uid);
+                        }
+                        publish(this, MailboxEvent.Type.NEW_MESSAGE, uids, status.total);
+                    }
+                    long arrived = Math.max(0, status.uidnext - lastUidNext);
+                    if (status.total < lastMessages + arrived) {
+                        publish(this, MailboxEvent.Type.EXPUNGED, List.of(), status.total);
+                    }
+                    if (status.unseen != lastUnseen && status.uidnext == lastUidNext) {
+                        publish(this, MailboxEvent.Type.FLAGS_CHANGED, List.of(), status.total);
+                    }
+                }
+
+                lastUidNext = status.uidnext;
+                lastMessages = status.total;
+                lastUnseen = status.unseen;
+
+            } catch (Exception e) {
+                log.warn("Mailbox poll failed for {}: {}", email, e.getMessage());
+            }
+        }
+
+        private void closeStore() {
+            IMAPStore current = store;
+            store = null;
+            folder = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (MessagingException e) {
+                    log.debug("Error closing IDLE connection: {}", e.getMessage());
+                }
+            }
+        }
+
+        private List<Long> uidsOf(IMAPFolder source, Message[] messages) {
+            List<Long> uids = new ArrayList<>(messages.length);
+            for (Message message : messages) {
+                try {
+                    uids.add(source.getUID(message));
+                } catch (MessagingException e) {
+                    log.debug("Could not resolve UID: {}", e.getMessage());
+                }
+            }
+            return uids;
+        }
+
+        private int messageCount(IMAPFolder source) {
+            try {
+                return source.getMessageCount();
+            } catch (MessagingException e) {
+                return -1;
+            }
+        }
+    }
+}
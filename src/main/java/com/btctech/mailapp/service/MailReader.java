@@ -0,0 +1,28 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.InboxResponse;
+
+/**
+ * Read side of a mailbox. Implemented over IMAP ({@link MailReceiveService})
+ * and directly over the local Maildir ({@link MaildirReader}); both address
+ * messages by the same IMAP UID / UIDVALIDITY, so cursors and links are
+ * interchangeable between them.
+ */
+public interface MailReader {
+
+    /**
+     * One page of a folder's emails, newest first, with total/unread counts
+     */
+    InboxResponse getMessages(String email, String password, String folder, int limit, String cursor);
+
+    /**
+     * One email of a folder including bodies
+     */
+    EmailDTO getEmail(String email, String password, String folder, String uid, Long uidValidity);
+
+    /**
+     * Unread count of the inbox
+     */
+    int getUnreadCount(String email, String password);
+}
@@ -1,270 +1,709 @@
 package com.btctech.mailapp.service;
 
+import com.btctech.mailapp.dto.AttachmentDTO;
 import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.FolderDTO;
+import com.btctech.mailapp.dto.InboxCursor;
+import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.dto.MailFilter;
 import com.btctech.mailapp.exception.MailException;
 import jakarta.mail.*;
-import jakarta.mail.internet.InternetAddress;
-import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.search.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.eclipse.angus.mail.iap.Argument;
+import org.eclipse.angus.mail.iap.ConnectionException;
+import org.eclipse.angus.mail.iap.ProtocolException;
+import org.eclipse.angus.mail.iap.Response;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.protocol.BASE64MailboxEncoder;
+import org.eclipse.angus.mail.imap.protocol.IMAPProtocol;
+import org.eclipse.angus.mail.imap.protocol.IMAPResponse;
+import org.eclipse.angus.mail.imap.protocol.ListInfo;
+import org.eclipse.angus.mail.imap.protocol.Status;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class MailReceiveService {
+public class MailReceiveService implements MailReader {
     
-    @Value("${mail.imap.host}")
-    private String imapHost;
+    private static final int STREAM_BUFFER_SIZE = 8192;
     
-    @Value("${mail.imap.port}")
-    private int imapPort;
+    private static final List<String> STANDARD_FOLDERS = List.of("INBOX", "Sent", "Drafts", "Trash", "Spam", "Archive");
+    
+    private static final Pattern ESEARCH_MAX = Pattern.compile("\\bMAX (\\d+)");
+    
+    private static final FetchProfile SUMMARY_PROFILE = new FetchProfile();
+    
+    static {
+        SUMMARY_PROFILE.add(FetchProfile.Item.ENVELOPE);
+        SUMMARY_PROFILE.add(FetchProfile.Item.FLAGS);
+        SUMMARY_PROFILE.add(FetchProfile.Item.SIZE);
+        SUMMARY_PROFILE.add(FetchProfile.Item.CONTENT_INFO);
+        SUMMARY_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+    }
+    
+    private final ImapConnectionPool connectionPool;
+    private final MessageBodyCache messageBodyCache;
+    private final MailSearchService mailSearchService;
     
     /**
-     * Get inbox emails
+     * Get one page of a folder's emails, newest first (headers only - bodies are
+     * fetched per message via getEmail), together with the total count,
+     * unread count and UIDNEXT - all over a single pooled IMAP session.
+     * Without a cursor the newest page is returned; with a cursor the page
+     * continues right below the last UID the client has seen.
      */
-    public List<EmailDTO> getInbox(String email, String password, int limit) {
-        log.info("Fetching inbox for: {}", email);
+    @Override
+    public InboxResponse getMessages(String email, String password, String folderName, int limit, String cursor) {
+        log.info("Fetching {} for: {}", folderName, email);
         
-        Store store = null;
-        Folder inbox = null;
+        InboxCursor after = cursor != null && !cursor.isEmpty() ? InboxCursor.decode(cursor) : null;
+        ImapConnection connection = null;
         
         try {
-            // IMAP Properties
-            Properties props = new Properties();
-            props.put("mail.imap.host", imapHost);
-            props.put("mail.imap.port", String.valueOf(imapPort));
-            props.put("mail.imap.ssl.enable", "true");
-            props.put("mail.imap.ssl.protocols", "TLSv1.2 TLSv1.3");
-            props.put("mail.imap.connectiontimeout", "10000");
-            props.put("mail.imap.timeout", "10000");
+            // Borrow pooled connection (already authenticated for hot accounts)
+            connection = connectionPool.borrow(email, password);
+            
+            // Open folder (reused if already selected on this connection)
+            IMAPFolder inbox = connection.openFolder(folderName, Folder.READ_ONLY);
+            long uidValidity = inbox.getUIDValidity();
             
-            // Create session
-            Session session = Session.getInstance(props);
+            if (after != null && after.getUidValidity() != uidValidity) {
+                throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please reload from the first page.");
+            }
             
-            // Connect to store
-            store = session.getStore("imap");
-            store.connect(imapHost, imapPort, email, password);
+            // Counts + UIDNEXT in one STATUS on the already selected session
+            Status status = mailboxStatus(inbox);
             
-            log.debug("Connected to IMAP server");
+            // Newest message number of this page
+            int end = after == null ? inbox.getMessageCount() : lastMessageBefore(inbox, after.getLastUid());
+            log.info("{} page for {} ends at message {}", folderName, email, end);
             
-            // Open inbox folder
-            inbox = store.getFolder("INBOX");
-            inbox.open(Folder.READ_ONLY);
+            InboxResponse response = readPage(inbox, end, limit);
+            response.setEmail(email);
+            response.setFolder(folderName);
+            response.setTotalCount(status.total);
+            response.setUnreadCount(status.unseen);
+            response.setUidNext(status.uidnext);
             
-            int messageCount = inbox.getMessageCount();
-            log.info("Total messages in inbox: {}", messageCount);
+            log.info("Fetched {} emails", response.getEmails().size());
+            return response;
             
-            if (messageCount == 0) {
-                return new ArrayList<>();
+        } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to fetch inbox: {}", e.getMessage(), e);
+            throw new MailException("Failed to fetch inbox: " + e.getMessage());
+        } finally {
+            // Return connection to the pool
+            if (connection != null) {
+                connection.close();
             }
+        }
+    }
+    
+    /**
+     * Get one page of a folder's emails matching the filter, newest first.
+     * The filter runs as a SEARCH on the server, restricted to the messages
+     * below the cursor; only the matching messages of this page are fetched
+     * (headers + structure).
+     */
+    public InboxResponse getMessages(String email, String password, String folderName, MailFilter filter,
+                                     int limit, String cursor) {
+        if (filter == null || filter.isEmpty()) {
+            return getMessages(email, password, folderName, limit, cursor);
+        }
+        
+        log.info("Fetching filtered {} for: {} ({})", folderName, email, filter);
+        
+        InboxCursor after = cursor != null && !cursor.isEmpty() ? InboxCursor.decode(cursor) : null;
+        ImapConnection connection = null;
+        
+        try {
+            connection = connectionPool.borrow(email, password);
             
-            // Get messages (most recent first)
-            int start = Math.max(1, messageCount - limit + 1);
-            Message[] messages = inbox.getMessages(start, messageCount);
+            IMAPFolder inbox = connection.openFolder(folderName, Folder.READ_ONLY);
+            long uidValidity = inbox.getUIDValidity();
             
-            // Reverse to get newest first
-            List<Message> messageList = Arrays.asList(messages);
-            List<Message> reversedList = new ArrayList<>(messageList);
-            java.util.Collections.reverse(reversedList);
+            if (after != null && after.getUidValidity() != uidValidity) {
+                throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please reload from the first page.");
+            }
             
-            // Convert to DTO
-            List<EmailDTO> emails = new ArrayList<>();
-            for (Message message : reversedList) {
-                try {
-                    EmailDTO emailDTO = convertToDTO(message);
-                    emails.add(emailDTO);
-                } catch (Exception e) {
-                    log.warn("Failed to parse message: {}", e.getMessage());
-                }
+            Status status = mailboxStatus(inbox);
+            
+            int end = after == null ? inbox.getMessageCount() : lastMessageBefore(inbox, after.getLastUid());
+            
+            Message[] matches = new Message[0];
+            if (end > 0) {
+                // SEARCH <1:end> <criteria> - evaluated by the server
+                matches = inbox.search(toSearchTerm(filter), inbox.getMessages(1, end));
             }
             
-            log.info("Fetched {} emails", emails.size());
-            return emails;
+            InboxResponse response = readMatches(inbox, matches, filter, limit);
+            response.setEmail(email);
+            response.setFolder(folderName);
+            response.setTotalCount(status.total);
+            response.setUnreadCount(status.unseen);
+            response.setUidNext(status.uidnext);
+            
+            log.info("Fetched {} of {} matching emails", response.getEmails().size(), matches.length);
+            return response;
             
         } catch (MessagingException e) {
-            log.error("Failed to fetch inbox: {}", e.getMessage(), e);
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to fetch filtered inbox: {}", e.getMessage(), e);
             throw new MailException("Failed to fetch inbox: " + e.getMessage());
         } finally {
-            // Close connections
-            try {
-                if (inbox != null && inbox.isOpen()) {
-                    inbox.close(false);
-                }
-                if (store != null) {
-                    store.close();
-                }
-            } catch (MessagingException e) {
-                log.warn("Error closing IMAP connection: {}", e.getMessage());
+            if (connection != null) {
+                connection.close();
             }
         }
     }
     
     /**
-     * Get single email by UID
+     * Total and unread counts of every folder, standard folders first.
+     * One LIST, then a STATUS per folder written back to back on one pooled
+     * connection - the whole sidebar costs two round trips, however many
+     * folders there are.
      */
-    public EmailDTO getEmail(String email, String password, String uid) {
-        // Implementation for getting single email
-        // For now, just get all and filter
-        List<EmailDTO> emails = getInbox(email, password, 100);
-        return emails.stream()
-                .filter(e -> e.getUid().equals(uid))
-                .findFirst()
-                .orElseThrow(() -> new MailException("Email not found"));
+    public List<FolderDTO> getFolders(String email, String password) {
+        ImapConnection connection = null;
+        
+        try {
+            connection = connectionPool.borrow(email, password);
+            
+            // Commands run on the protocol of the selected folder, so no extra connection is opened
+            IMAPFolder inbox = connection.openFolder("INBOX", Folder.READ_ONLY);
+            
+            @SuppressWarnings("unchecked")
+            List<FolderDTO> folders = (List<FolderDTO>) inbox.doCommand(MailReceiveService::statusAll);
+            sortFolders(folders);
+            
+            log.info("Fetched counts of {} folders for {}", folders.size(), email);
+            return folders;
+            
+        } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to fetch folders: {}", e.getMessage(), e);
+            throw new MailException("Failed to fetch folders: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
     }
     
     /**
-     * Convert Message to EmailDTO
+     * Order folders for display: INBOX and the standard folders created with
+     * the mailbox first, the rest alphabetically
      */
-    private EmailDTO convertToDTO(Message message) throws MessagingException, IOException {
-        EmailDTO dto = new EmailDTO();
-        
-        // UID (use message number as UID for now)
-        dto.setUid(String.valueOf(message.getMessageNumber()));
+    static void sortFolders(List<FolderDTO> folders) {
+        folders.sort(Comparator.comparingInt((FolderDTO folder) -> folderRank(folder.getName()))
+                .thenComparing(FolderDTO::getName, String.CASE_INSENSITIVE_ORDER));
+    }
+    
+    private static int folderRank(String name) {
+        if ("INBOX".equalsIgnoreCase(name)) {
+            return 0;
+        }
+        int index = STANDARD_FOLDERS.indexOf(name);
+        return index >= 0 ? index : STANDARD_FOLDERS.size();
+    }
+    
+    /**
+     * Compile the filter into a SearchTerm tree (AND of all criteria)
+     */
+    private SearchTerm toSearchTerm(MailFilter filter) {
+        List<SearchTerm> terms = new ArrayList<>();
         
-        // From
-        Address[] fromAddresses = message.getFrom();
-        if (fromAddresses != null && fromAddresses.length > 0) {
-            dto.setFrom(((InternetAddress) fromAddresses[0]).getAddress());
+        if (filter.isUnreadOnly()) {
+            terms.add(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
+        }
+        if (filter.getFrom() != null && !filter.getFrom().isBlank()) {
+            terms.add(new FromStringTerm(filter.getFrom().trim()));
+        }
+        if (filter.getSubject() != null && !filter.getSubject().isBlank()) {
+            terms.add(new SubjectTerm(filter.getSubject().trim()));
+        }
+        if (filter.getSince() != null) {
+            terms.add(new ReceivedDateTerm(ComparisonTerm.GE, toDate(filter.getSince())));
+        }
+        if (filter.getBefore() != null) {
+            terms.add(new ReceivedDateTerm(ComparisonTerm.LT, toDate(filter.getBefore())));
+        }
+        if (filter.getLargerThan() != null) {
+            terms.add(new SizeTerm(ComparisonTerm.GT, filter.getLargerThan()));
+        }
+        if (filter.isHasAttachment()) {
+            // IMAP SEARCH has no attachment criterion: narrow to multipart/mixed on
+            // the server, then confirm from BODYSTRUCTURE in readMatches
+            terms.add(new HeaderTerm("Content-Type", "multipart/mixed"));
         }
         
-        // To
-        Address[] toAddresses = message.getRecipients(Message.RecipientType.TO);
-        if (toAddresses != null && toAddresses.length > 0) {
-            dto.setTo(((InternetAddress) toAddresses[0]).getAddress());
+        return terms.size() == 1 ? terms.get(0) : new AndTerm(terms.toArray(new SearchTerm[0]));
+    }
+    
+    /**
+     * Fetch the newest matches as a page. With the attachment filter some
+     * candidates are dropped after the fetch, so keep going until the page is full.
+     */
+    private InboxResponse readMatches(IMAPFolder folder, Message[] matches, MailFilter filter, int limit)
+            throws MessagingException {
+        long uidValidity = folder.getUIDValidity();
+        List<EmailDTO> emails = new ArrayList<>();
+        
+        int next = matches.length; // matches are in ascending message order
+        Message oldest = null;
+        
+        while (emails.size() < limit && next > 0) {
+            int start = Math.max(0, next - (limit - emails.size()));
+            Message[] batch = Arrays.copyOfRange(matches, start, next);
+            next = start;
+            
+            folder.fetch(batch, SUMMARY_PROFILE);
+            
+            for (int i = batch.length - 1; i >= 0; i--) {
+                oldest = batch[i];
+                try {
+                    EmailDTO dto = convertToSummaryDTO(batch[i]);
+                    if (!filter.isHasAttachment() || dto.isHasAttachments()) {
+                        emails.add(dto);
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to parse message: {}", e.getMessage());
+                }
+            }
         }
         
-        // Subject
-        dto.setSubject(message.getSubject());
+        boolean hasMore = next > 0;
+        String nextCursor = hasMore && oldest != null
+                ? new InboxCursor(uidValidity, folder.getUID(oldest)).encode()
+                : null;
+        
+        return InboxResponse.builder()
+                .uidValidity(uidValidity)
+                .emails(emails)
+                .hasMore(hasMore)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+    
+    /**
+     * Read messages [end - limit + 1, end] as a page, newest first.
+     * Only the requested sequence range is fetched, so every page costs the same.
+     */
+    private InboxResponse readPage(IMAPFolder folder, int end, int limit) throws MessagingException {
+        long uidValidity = folder.getUIDValidity();
+        List<EmailDTO> emails = new ArrayList<>();
         
-        // Dates
-        dto.setSentDate(message.getSentDate());
-        dto.setReceivedDate(message.getReceivedDate());
+        if (end < 1 || limit < 1) {
+            return InboxResponse.builder()
+                    .uidValidity(uidValidity)
+                    .emails(emails)
+                    .build();
+        }
         
-        // Read status
-        dto.setRead(message.isSet(Flags.Flag.SEEN));
+        // Get messages (most recent first)
+        int start = Math.max(1, end - limit + 1);
+        Message[] messages = folder.getMessages(start, end);
         
-        // Size
-        dto.setSize(message.getSize());
+        // One batched FETCH for envelope, flags, size, UID and structure
+        folder.fetch(messages, SUMMARY_PROFILE);
         
-        // Body
-        String[] content = extractContent(message);
-        dto.setBody(content[0]); // Plain text
-        dto.setHtmlBody(content[1]); // HTML
+        // Convert to DTO, newest first
+        for (int i = messages.length - 1; i >= 0; i--) {
+            try {
+                emails.add(convertToSummaryDTO(messages[i]));
+            } catch (Exception e) {
+                log.warn("Failed to parse message: {}", e.getMessage());
+            }
+        }
         
-        // Attachments
-        dto.setHasAttachments(hasAttachments(message));
+        // Cursor points at the oldest message of this page
+        boolean hasMore = start > 1;
+        String nextCursor = hasMore
+                ? new InboxCursor(uidValidity, folder.getUID(messages[0])).encode()
+                : null;
         
-        return dto;
+        return InboxResponse.builder()
+                .uidValidity(uidValidity)
+                .emails(emails)
+                .hasMore(hasMore)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    /**
+     * STATUS (MESSAGES UNSEEN UIDNEXT) for the selected folder.
+     * Also flushes pending EXISTS/EXPUNGE updates into the folder.
+     */
+    private Status mailboxStatus(IMAPFolder folder) throws MessagingException {
+        return (Status) folder.doCommand(p ->
+                p.status(folder.getFullName(), new String[]{"MESSAGES", "UNSEEN", "UIDNEXT"}));
     }
     
     /**
-     * Extract email content (text and HTML)
+     * LIST every folder, then pipeline STATUS for the selectable ones:
+     * all commands are written before the first response is read.
+     * Unrelated untagged responses are passed on to the folder's handlers.
      */
-    private String[] extractContent(Message message) throws MessagingException, IOException {
-        String plainText = "";
-        String html = "";
+    private static List<FolderDTO> statusAll(IMAPProtocol protocol) throws ProtocolException {
+        ListInfo[] list = protocol.list("", "*");
+        if (list == null) {
+            return new ArrayList<>();
+        }
         
-        Object content = message.getContent();
+        Map<String, String> pending = new HashMap<>(); // tag -> folder
+        Map<String, FolderDTO> folders = new LinkedHashMap<>();
+        List<Response> unrelated = new ArrayList<>();
         
-        if (content instanceof String) {
-            plainText = (String) content;
-        } else if (content instanceof Multipart) {
-            Multipart multipart = (Multipart) content;
+        try {
+            for (ListInfo info : list) {
+                if (!info.canOpen) {
+                    continue;
+                }
+                Argument args = new Argument();
+                args.writeString(protocol.supportsUtf8() ? info.name : BASE64MailboxEncoder.encode(info.name),
+                        StandardCharsets.UTF_8);
+                args.writeArgument(new Argument().writeAtom("MESSAGES").writeAtom("UNSEEN"));
+                pending.put(protocol.writeCommand("STATUS", args), info.name);
+            }
             
-            for (int i = 0; i < multipart.getCount(); i++) {
-                BodyPart bodyPart = multipart.getBodyPart(i);
+            while (!pending.isEmpty()) {
+                Response response = protocol.readResponse();
                 
-                if (bodyPart.isMimeType("text/plain")) {
-                    plainText = (String) bodyPart.getContent();
-                } else if (bodyPart.isMimeType("text/html")) {
-                    html = (String) bodyPart.getContent();
-                } else if (bodyPart.getContent() instanceof MimeMultipart) {
-                    // Nested multipart
-                    MimeMultipart nested = (MimeMultipart) bodyPart.getContent();
-                    for (int j = 0; j < nested.getCount(); j++) {
-                        BodyPart nestedPart = nested.getBodyPart(j);
-                        if (nestedPart.isMimeType("text/plain")) {
-                            plainText = (String) nestedPart.getContent();
-                        } else if (nestedPart.isMimeType("text/html")) {
-                            html = (String) nestedPart.getContent();
-                        }
+                if (response.isTagged()) {
+                    String name = pending.remove(response.getTag());
+                    if (name != null && !response.isOK()) {
+                        log.debug("STATUS {} failed: {}", name, response);
                     }
+                } else if (response.isBYE()) {
+                    throw new ConnectionException(protocol, response);
+                } else if (response instanceof IMAPResponse && ((IMAPResponse) response).keyEquals("STATUS")) {
+                    Status status = new Status(response);
+                    folders.put(status.mbox, FolderDTO.builder()
+                            .name(status.mbox)
+                            .totalCount(Math.max(status.total, 0))
+                            .unreadCount(Math.max(status.unseen, 0))
+                            .build());
+                } else {
+                    unrelated.add(response);
                 }
             }
+        } catch (IOException e) {
+            throw new ProtocolException("Failed to read folder status: " + e.getMessage(), e);
+        } finally {
+            protocol.notifyResponseHandlers(unrelated.toArray(new Response[0]));
         }
         
-        // If no plain text but has HTML, convert HTML to plain text (simple)
-        if (plainText.isEmpty() && !html.isEmpty()) {
-            plainText = html.replaceAll("<[^>]*>", "").trim();
+        return new ArrayList<>(folders.values());
+    }
+    
+    /**
+     * Message number of the newest message with a UID below lastUid (0 if none)
+     */
+    private int lastMessageBefore(IMAPFolder folder, long lastUid) throws MessagingException {
+        // Usual case: the cursor message still exists - one UID FETCH
+        Message anchor = folder.getMessageByUID(lastUid);
+        if (anchor != null && !anchor.isExpunged()) {
+            return anchor.getMessageNumber() - 1;
         }
         
-        return new String[]{plainText, html};
+        // Cursor message was expunged - let the server find the newest one below it
+        if (lastUid <= 1) {
+            return 0;
+        }
+        return (Integer) folder.doCommand(p -> highestMessageNumber(p, lastUid - 1));
     }
     
     /**
-     * Check if message has attachments
+     * Highest message number with a UID up to maxUid (0 if none): SEARCH
+     * answers with message numbers only, and with ESEARCH just the maximum -
+     * no UID FETCH over every older message
      */
-    private boolean hasAttachments(Message message) throws MessagingException, IOException {
-        Object content = message.getContent();
+    private static int highestMessageNumber(IMAPProtocol protocol, long maxUid) throws ProtocolException {
+        boolean esearch = protocol.hasCapability("ESEARCH");
+        Argument args = new Argument();
+        if (esearch) {
+            args.writeAtom("RETURN").writeArgument(new Argument().writeAtom("MAX"));
+        }
+        args.writeAtom("UID").writeAtom("1:" + maxUid);
+        
+        Response[] responses = protocol.command("SEARCH", args);
+        Response result = responses[responses.length - 1];
+        int highest = 0;
+        
+        if (result.isOK()) {
+            for (int i = 0; i < responses.length - 1; i++) {
+                if (!(responses[i] instanceof IMAPResponse response)) {
+                    continue;
+                }
+                if (response.keyEquals("SEARCH")) {
+                    int number;
+                    while ((number = response.readNumber()) != -1) {
+                        highest = Math.max(highest, number);
+                    }
+                    responses[i] = null;
+                } else if (response.keyEquals("ESEARCH")) {
+                    Matcher max = ESEARCH_MAX.matcher(response.getRest());
+                    if (max.find()) {
+                        highest = Integer.parseInt(max.group(1));
+                    }
+                    responses[i] = null;
+                }
+            }
+        }
         
-        if (content instanceof Multipart) {
-            Multipart multipart = (Multipart) content;
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(result);
+        return highest;
+    }
+    
+    /**
+     * Get single email by IMAP UID.
+     * When uidValidity is given it must match the mailbox, otherwise the UID
+     * may point to a different message.
+     */
+    @Override
+    public EmailDTO getEmail(String email, String password, String folderName, String uid, Long uidValidity) {
+        long messageUid = parseUid(uid);
+        
+        ImapConnection connection = null;
+        
+        try {
+            connection = connectionPool.borrow(email, password);
             
-            for (int i = 0; i < multipart.getCount(); i++) {
-                BodyPart bodyPart = multipart.getBodyPart(i);
-                
-                if (Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition())) {
-                    return true;
+            IMAPFolder inbox = openFolder(connection, folderName, uidValidity);
+            long currentValidity = inbox.getUIDValidity();
+            
+            // Re-opened messages only fetch their flags; the body comes from the cache
+            EmailDTO cached = messageBodyCache.get(email, folderName, currentValidity, messageUid);
+            if (cached != null) {
+                Message message = inbox.getMessageByUID(messageUid);
+                if (message == null) {
+                    throw new MailException("Email not found");
                 }
+                cached.setRead(message.isSet(Flags.Flag.SEEN));
+                log.debug("Email {} served from body cache", uid);
+                return cached;
+            }
+            
+            Message message = fetchMessage(inbox, messageUid);
+            EmailDTO dto = convertToDTO(message);
+            messageBodyCache.put(email, folderName, currentValidity, messageUid, dto);
+            mailSearchService.indexBody(email, folderName, currentValidity, messageUid, dto.getBody());
+            return dto;
+            
+        } catch (MessagingException | IOException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to fetch email {}: {}", uid, e.getMessage(), e);
+            throw new MailException("Failed to fetch email: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
             }
         }
+    }
+    
+    /**
+     * Describe one attachment (resolved from BODYSTRUCTURE only)
+     */
+    public AttachmentDTO getAttachmentInfo(String email, String password, String folderName, String uid,
+                                           String partId, Long uidValidity) {
+        long messageUid = parseUid(uid);
         
-        return false;
+        ImapConnection connection = null;
+        
+        try {
+            connection = connectionPool.borrow(email, password);
+            
+            Message message = openMessage(connection, folderName, messageUid, uidValidity);
+            Part part = MimeParts.findPart(message, partId);
+            if (part == null) {
+                throw new MailException("Attachment not found: " + partId);
+            }
+            
+            return MimeParts.describe(part, partId);
+            
+        } catch (MessagingException | IOException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to read attachment {} of {}: {}", partId, uid, e.getMessage(), e);
+            throw new MailException("Failed to read attachment: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+    
+    /**
+     * Stream one MIME part to the output.
+     * The part is pulled with partial BODY[section] fetches and decoded
+     * (base64 / quoted-printable) on the fly through a fixed-size buffer,
+     * so memory use does not grow with the attachment size.
+     */
+    public void streamAttachment(String email, String password, String folderName, String uid, String partId,
+                                 Long uidValidity, OutputStream out) throws IOException {
+        long messageUid = parseUid(uid);
+        
+        ImapConnection connection = null;
+        
+        try {
+            connection = connectionPool.borrow(email, password);
+            
+            Message message = openMessage(connection, folderName, messageUid, uidValidity);
+            Part part = MimeParts.findPart(message, partId);
+            if (part == null) {
+                throw new MailException("Attachment not found: " + partId);
+            }
+            
+            long total = 0;
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            try (InputStream in = part.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    total += read;
+                }
+            }
+            out.flush();
+            
+            log.info("Streamed attachment {} of {} ({} bytes)", partId, uid, total);
+            
+        } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            log.error("Failed to stream attachment {} of {}: {}", partId, uid, e.getMessage(), e);
+            throw new MailException("Failed to stream attachment: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+    
+    /**
+     * Resolve a message by UID in a folder, checking UIDVALIDITY if given
+     */
+    private Message openMessage(ImapConnection connection, String folderName, long messageUid, Long uidValidity)
+            throws MessagingException {
+        return fetchMessage(openFolder(connection, folderName, uidValidity), messageUid);
+    }
+    
+    /**
+     * Select a folder, checking UIDVALIDITY if given
+     */
+    private IMAPFolder openFolder(ImapConnection connection, String folderName, Long uidValidity)
+            throws MessagingException {
+        IMAPFolder inbox = connection.openFolder(folderName, Folder.READ_ONLY);
+        
+        if (uidValidity != null && uidValidity != inbox.getUIDValidity()) {
+            throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please refresh the inbox.");
+        }
+        return inbox;
+    }
+    
+    /**
+     * Resolve a message by UID, prefetching envelope, flags and BODYSTRUCTURE in one command
+     */
+    private Message fetchMessage(IMAPFolder inbox, long messageUid) throws MessagingException {
+        // UID FETCH of exactly one message
+        Message message = inbox.getMessageByUID(messageUid);
+        if (message == null) {
+            throw new MailException("Email not found");
+        }
+        
+        inbox.fetch(new Message[]{message}, SUMMARY_PROFILE);
+        return message;
+    }
+    
+    /**
+     * Parse a UID path parameter
+     */
+    static long parseUid(String uid) {
+        try {
+            long value = Long.parseLong(uid);
+            if (value <= 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new MailException("Invalid message UID: " + uid);
+        }
+    }
+    
+    /**
+     * Convert Message to EmailDTO including bodies
+     */
+    private EmailDTO convertToDTO(Message message) throws MessagingException, IOException {
+        UIDFolder folder = (UIDFolder) message.getFolder();
+        return MessageConverter.toEmail(message, folder.getUID(message), folder.getUIDValidity());
+    }
+    
+    /**
+     * Convert Message to EmailDTO from envelope, flags and structure only
+     */
+    private EmailDTO convertToSummaryDTO(Message message) throws MessagingException, IOException {
+        UIDFolder folder = (UIDFolder) message.getFolder();
+        return MessageConverter.toSummary(message, folder.getUID(message), folder.getUIDValidity());
     }
     
     /**
      * Get unread count
      */
+    @Override
     public int getUnreadCount(String email, String password) {
-        Store store = null;
-        Folder inbox = null;
+        ImapConnection connection = null;
         
         try {
-            Properties props = new Properties();
-            props.put("mail.imap.host", imapHost);
-            props.put("mail.imap.port", String.valueOf(imapPort));
-            props.put("mail.imap.ssl.enable", "true");
-            
-            Session session = Session.getInstance(props);
-            store = session.getStore("imap");
-            store.connect(imapHost, imapPort, email, password);
+            connection = connectionPool.borrow(email, password);
             
-            inbox = store.getFolder("INBOX");
-            inbox.open(Folder.READ_ONLY);
+            Folder inbox = connection.openFolder("INBOX", Folder.READ_ONLY);
             
             return inbox.getUnreadMessageCount();
             
         } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
             log.error("Failed to get unread count: {}", e.getMessage());
             return 0;
         } finally {
-            try {
-                if (inbox != null && inbox.isOpen()) {
-                    inbox.close(false);
-                }
-                if (store != null) {
-                    store.close();
-                }
-            } catch (MessagingException e) {
-                log.warn("Error closing connection: {}", e.getMessage());
+            if (connection != null) {
+                connection.close();
             }
         }
     }
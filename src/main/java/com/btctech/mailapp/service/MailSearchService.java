@@ -0,0 +1,317 @@
+package com.btctech.mailapp.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-account, per-folder full-text index over subject, addresses and body text.
+ * Headers are indexed by MailSyncService as new mail is synced; body text is
+ * added for small incremental batches during sync and whenever a message is
+ * opened, so searching never downloads the mailbox. Indexes are persisted
+ * under mail.search.path and unloaded from memory when unused.
+ */
+@Slf4j
+@Service
+public class MailSearchService {
+
+    private static final int SUBJECT_WEIGHT = 3;
+    private static final int ADDRESS_WEIGHT = 2;
+    private static final int BODY_WEIGHT = 1;
+
+    @Value("${mail.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mail.search.path:./data/search}")
+    private String indexPath;
+
+    @Value("${mail.search.max-body-chars:20000}")
+    private int maxBodyChars;
+
+    @Value("${mail.search.body-batch-limit:50}")
+    private int bodyBatchLimit;
+
+    @Value("${mail.search.unload-after-ms:1800000}")
+    private long unloadAfterMs;
+
+    private final Map<String, Loaded> indexes = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a sync batch of this size should also index bodies
+     * (large batches - e.g. the first sync - only index headers)
+     */
+    public boolean indexBodies(int batchSize) {
+        return enabled && batchSize <= bodyBatchLimit;
+    }
+
+    /**
+     * Index subject and addresses (and the body text, if given) of a synced message
+     */
+    public void indexMessage(String email, String folder, long uidValidity, long uid, Message message,
+                             String bodyText) {
+        if (!enabled) {
+            return;
+        }
+
+        boolean withBody = bodyText != null;
+        try {
+            Map<String, Integer> frequencies = new HashMap<>();
+            SearchIndex.tokenize(message.getSubject(), SUBJECT_WEIGHT, frequencies);
+            tokenizeAddresses(message.getFrom(), frequencies);
+            tokenizeAddresses(message.getRecipients(Message.RecipientType.TO), frequencies);
+            tokenizeAddresses(message.getRecipients(Message.RecipientType.CC), frequencies);
+
+            if (withBody) {
+                SearchIndex.tokenize(truncate(bodyText), BODY_WEIGHT, frequencies);
+            }
+
+            Loaded loaded = load(email, folder, uidValidity);
+            synchronized (loaded) {
+                if (!loaded.index.contains(uid)) {
+                    loaded.index.add(uid, frequencies, withBody);
+                    loaded.dirty = true;
+                }
+            }
+        } catch (MessagingException e) {
+            log.debug("Could not index message {} of {}/{}: {}", uid, email, folder, e.getMessage());
+        }
+    }
+
+    /**
+     * Add body text of an opened message if it is not indexed yet
+     */
+    public void indexBody(String email, String folder, long uidValidity, long uid, String text) {
+        if (!enabled || text == null || text.isEmpty()) {
+            return;
+        }
+
+        Loaded loaded = load(email, folder, uidValidity);
+        synchronized (loaded) {
+            if (loaded.index.contains(uid) && !loaded.index.hasBody(uid)) {
+                Map<String, Integer> frequencies = new HashMap<>();
+                SearchIndex.tokenize(truncate(text), BODY_WEIGHT, frequencies);
+                loaded.index.add(uid, frequencies, true);
+                loaded.dirty = true;
+            }
+        }
+    }
+
+    public void remove(String email, String folder, long uidValidity, Collection<Long> uids) {
+        if (!enabled || uids.isEmpty()) {
+            return;
+        }
+
+        Loaded loaded = load(email, folder, uidValidity);
+        synchronized (loaded) {
+            loaded.index.remove(uids);
+            loaded.dirty = true;
+        }
+    }
+
+    /**
+     * Ranked UIDs for the query (all words must match, the last one as a prefix)
+     */
+    public List<Long> search(String email, String folder, long uidValidity, String query) {
+        List<String> tokens = SearchIndex.tokens(query);
+        if (!enabled || tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        boolean prefixLast = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+
+        List<SearchIndex.Hit> hits;
+        Loaded loaded = load(email, folder, uidValidity);
+        synchronized (loaded) {
+            hits = loaded.index.search(tokens, prefixLast);
+        }
+
+        List<Long> uids = new ArrayList<>(hits.size());
+        for (SearchIndex.Hit hit : hits) {
+            uids.add(hit.uid());
+        }
+        return uids;
+    }
+
+    /**
+     * Number of indexed messages of the folder
+     */
+    public int size(String email, String folder, long uidValidity) {
+        Loaded loaded = load(email, folder, uidValidity);
+        synchronized (loaded) {
+            return loaded.index.size();
+        }
+    }
+
+    /**
+     * Index header fields already stored in the local mail index
+     * (backfill for messages synced before they could be indexed)
+     */
+    public void indexHeaders(String email, String folder, long uidValidity, long uid,
+                             String subject, String from, String to, String cc) {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        SearchIndex.tokenize(subject, SUBJECT_WEIGHT, frequencies);
+        SearchIndex.tokenize(from, ADDRESS_WEIGHT, frequencies);
+        SearchIndex.tokenize(to, ADDRESS_WEIGHT, frequencies);
+        SearchIndex.tokenize(cc, ADDRESS_WEIGHT, frequencies);
+
+        Loaded loaded = load(email, folder, uidValidity);
+        synchronized (loaded) {
+            if (!loaded.index.contains(uid)) {
+                loaded.index.add(uid, frequencies, false);
+                loaded.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Persist changed indexes and unload the ones nobody used for a while
+     */
+    @Scheduled(fixedDelayString = "${mail.search.flush-interval-ms:60000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Loaded> entry : indexes.entrySet()) {
+            Loaded loaded = entry.getValue();
+            synchronized (loaded) {
+                if (loaded.dirty) {
+                    save(loaded);
+                }
+                if (!loaded.dirty && now - loaded.lastAccess > unloadAfterMs) {
+                    loaded.unloaded = true;
+                    indexes.remove(entry.getKey(), loaded);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Loaded loaded : indexes.values()) {
+            synchronized (loaded) {
+                if (loaded.dirty) {
+                    save(loaded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Index of the folder for this UIDVALIDITY (a new one if it changed)
+     */
+    private Loaded load(String email, String folder, long uidValidity) {
+        String key = email + "/" + folder;
+
+        while (true) {
+            Loaded loaded = indexes.computeIfAbsent(key, k -> {
+                Path file = file(email, folder);
+                SearchIndex index = read(file);
+                return new Loaded(file, index != null ? index : new SearchIndex(uidValidity));
+            });
+
+            synchronized (loaded) {
+                if (loaded.unloaded) {
+                    continue;
+                }
+                if (loaded.index.getUidValidity() != uidValidity) {
+                    log.info("UIDVALIDITY changed for {} - resetting search index", key);
+                    loaded.index = new SearchIndex(uidValidity);
+                    loaded.dirty = true;
+                }
+                loaded.lastAccess = System.currentTimeMillis();
+            }
+            return loaded;
+        }
+    }
+
+    private SearchIndex read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return SearchIndex.read(in);
+        } catch (IOException e) {
+            log.warn("Discarding unreadable search index {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(Loaded loaded) {
+        try {
+            Files.createDirectories(loaded.file.getParent());
+            Path tmp = loaded.file.resolveSibling(loaded.file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                loaded.index.write(out);
+            }
+            Files.move(tmp, loaded.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            loaded.dirty = false;
+        } catch (IOException e) {
+            log.warn("Failed to save search index {}: {}", loaded.file, e.getMessage());
+        }
+    }
+
+    private Path file(String email, String folder) {
+        return Paths.get(indexPath, Hashes.sha256Hex(email.toLowerCase(), 16), Hashes.sha256Hex(folder, 16) + ".idx");
+    }
+
+    private String truncate(String text) {
+        return text != null && text.length() > maxBodyChars ? text.substring(0, maxBodyChars) : text;
+    }
+
+    private static void tokenizeAddresses(Address[] addresses, Map<String, Integer> frequencies) {
+        if (addresses == null) {
+            return;
+        }
+        for (Address address : addresses) {
+            if (address instanceof InternetAddress) {
+                InternetAddress internet = (InternetAddress) address;
+                SearchIndex.tokenize(internet.getAddress(), ADDRESS_WEIGHT, frequencies);
+                SearchIndex.tokenize(internet.getPersonal(), ADDRESS_WEIGHT, frequencies);
+            } else {
+                SearchIndex.tokenize(address.toString(), ADDRESS_WEIGHT, frequencies);
+            }
+        }
+    }
+
+    private static final class Loaded {
+        private final Path file;
+        private SearchIndex index;
+        private boolean dirty;
+        private boolean unloaded;
+        private long lastAccess = System.currentTimeMillis();
+
+        Loaded(Path file, SearchIndex index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+}
@@ -1,36 +1,72 @@
 package com.btctech.mailapp.service;
 
+import com.btctech.mailapp.dto.BulkRecipient;
+import com.btctech.mailapp.dto.BulkSendRequest;
+import com.btctech.mailapp.dto.BulkSendStatus;
+import com.btctech.mailapp.dto.OutboundMailDTO;
 import com.btctech.mailapp.dto.SendMailRequest;
+import com.btctech.mailapp.entity.MailAccount;
+import com.btctech.mailapp.entity.OutboundMail;
 import com.btctech.mailapp.exception.MailException;
 import jakarta.mail.*;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimePart;
+import jakarta.mail.internet.MimeUtility;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.util.Properties;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.UnknownServiceException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MailSendService {
     
-    @Value("${mail.smtp.host}")
-    private String smtpHost;
-    
-    @Value("${mail.smtp.port}")
-    private int smtpPort;
+    // Messages rendered and saved per round trip during a bulk send
+    private static final int BULK_CHUNK = 500;
     
     private final SessionService sessionService;
+    private final SmtpConnectionPool smtpConnectionPool;
+    private final OutboundMailService outboundMailService;
+    
+    @Value("${mail.bulk.max-recipients:10000}")
+    private int maxBulkRecipients;
+    
+    /**
+     * Send email - Password retrieved from session automatically.
+     * The message is only queued here; OutboundMailService delivers it.
+     */
+    public OutboundMailDTO sendMail(MailAccount account, String password, SendMailRequest request) {
+        return sendMail(account, password, request, List.of());
+    }
     
     /**
-     * Send email - Password retrieved from session automatically
+     * Send email with uploaded attachments. The parts stay in the servlet
+     * container's temp files and are base64-encoded from there straight into
+     * the outbound spool file - never held in memory as a whole.
      */
-    public void sendMail(String fromEmail, String password, SendMailRequest request) {
+    public OutboundMailDTO sendMail(MailAccount account, String password, SendMailRequest request,
+                                    List<MultipartFile> attachments) {
         
-        log.info("Attempting to send email from {} to {}", fromEmail, request.getTo());
+        log.info("Queueing email from {} to {} ({} attachments)", account.getEmail(), request.getTo(), attachments.size());
         
         // Validate inputs
         if (password == null || password.isEmpty()) {
@@ -38,67 +74,186 @@ public class MailSendService {
         }
         
         try {
-            // SMTP Properties
-            Properties props = new Properties();
-            props.put("mail.smtp.host", smtpHost);
-            props.put("mail.smtp.port", String.valueOf(smtpPort));
-            props.put("mail.smtp.auth", "true");
-            props.put("mail.smtp.starttls.enable", "true");
-            props.put("mail.smtp.starttls.required", "true");
-            props.put("mail.smtp.ssl.protocols", "TLSv1.2 TLSv1.3");
-            props.put("mail.smtp.timeout", "10000"); // 10 seconds
-            props.put("mail.smtp.connectiontimeout", "10000");
-            
-            log.debug("SMTP Config: host={}, port={}", smtpHost, smtpPort);
+            MimeMessage message = createMessage(account.getEmail(), request, attachments);
+            OutboundMail job = outboundMailService.enqueue(account, password, message);
+            return OutboundMailService.toDTO(job);
             
-            // Create session with authentication
-            Session session = Session.getInstance(props, new Authenticator() {
-                @Override
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    log.debug("Authenticating as: {}", fromEmail);
-                    return new PasswordAuthentication(fromEmail, password);
+        } catch (MailException e) {
+            throw e;
+        } catch (MessagingException e) {
+            log.error("Failed to build email from {} to {}: {}", account.getEmail(), request.getTo(), e.getMessage(), e);
+            throw new MailException("Failed to send email: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Unexpected error sending email: {}", e.getMessage(), e);
+            throw new MailException("Unexpected error: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Bulk send: one message per recipient, rendered from the subject/body
+     * templates (parsed once) and queued under a new batch id
+     */
+    public BulkSendStatus sendBulk(MailAccount account, String password, BulkSendRequest request) {
+        
+        List<BulkRecipient> recipients = request.getRecipients();
+        log.info("Queueing bulk email from {} to {} recipients", account.getEmail(), recipients.size());
+        
+        if (password == null || password.isEmpty()) {
+            throw new MailException("Password not found in session");
+        }
+        if (recipients.size() > maxBulkRecipients) {
+            throw new MailException("Too many recipients: " + recipients.size() + " (max " + maxBulkRecipients + ")");
+        }
+        
+        boolean html = Boolean.TRUE.equals(request.getIsHtml());
+        MailTemplate subject = MailTemplate.compile(request.getSubject());
+        MailTemplate body = MailTemplate.compile(request.getBody());
+        String batchId = UUID.randomUUID().toString();
+        
+        int queued = 0;
+        try {
+            List<MimeMessage> chunk = new ArrayList<>(BULK_CHUNK);
+            for (BulkRecipient recipient : recipients) {
+                Map<String, String> variables = recipient.getVariables() != null
+                        ? new HashMap<>(recipient.getVariables())
+                        : new HashMap<>();
+                variables.putIfAbsent("email", recipient.getTo());
+                
+                SendMailRequest single = new SendMailRequest();
+                single.setTo(recipient.getTo());
+                // A variable must not be able to start a new header line
+                single.setSubject(subject.render(variables, false).replaceAll("[\\r\\n]+", " "));
+                single.setBody(body.render(variables, html));
+                single.setIsHtml(html);
+                chunk.add(createMessage(account.getEmail(), single, List.of()));
+                
+                if (chunk.size() == BULK_CHUNK) {
+                    outboundMailService.enqueueAll(account, password, batchId, chunk);
+                    queued += chunk.size();
+                    chunk.clear();
                 }
-            });
-            
-            // Enable debug mode (optional, remove in production)
-            session.setDebug(false);
-            
-            // Create message
-            MimeMessage message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(fromEmail));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(request.getTo()));
-            
-            // Add CC if present
-            if (request.getCc() != null && !request.getCc().isEmpty()) {
-                message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(request.getCc()));
-            }
-            
-            // Add BCC if present
-            if (request.getBcc() != null && !request.getBcc().isEmpty()) {
-                message.setRecipients(Message.RecipientType.BCC, InternetAddress.parse(request.getBcc()));
             }
-            
-            message.setSubject(request.getSubject());
-            
-            // Set body (HTML or plain text)
-            if (request.getIsHtml() != null && request.getIsHtml()) {
-                message.setContent(request.getBody(), "text/html; charset=utf-8");
-            } else {
-                message.setText(request.getBody(), "utf-8");
+            if (!chunk.isEmpty()) {
+                outboundMailService.enqueueAll(account, password, batchId, chunk);
+                queued += chunk.size();
             }
             
-            // Send message
-            log.info("Sending email to SMTP server...");
-            Transport.send(message);
+        } catch (Exception e) {
+            log.error("Bulk send {} from {} stopped after {} of {} messages: {}",
+                    batchId, account.getEmail(), queued, recipients.size(), e.getMessage(), e);
+            throw new MailException("Failed to queue bulk email after " + queued + " of " + recipients.size()
+                    + " messages (batch " + batchId + "): " + e.getMessage());
+        }
+        
+        // Start delivery now rather than on the next poll
+        outboundMailService.refill();
+        
+        return BulkSendStatus.builder()
+                .batchId(batchId)
+                .total(queued)
+                .queued(queued)
+                .build();
+    }
+    
+    /**
+     * Build the message as it will be sent
+     */
+    private MimeMessage createMessage(String fromEmail, SendMailRequest request, List<MultipartFile> attachments)
+            throws MessagingException, UnsupportedEncodingException {
+        MimeMessage message = new MimeMessage(smtpConnectionPool.getSession());
+        message.setFrom(new InternetAddress(fromEmail));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(request.getTo()));
+        
+        // Add CC if present
+        if (request.getCc() != null && !request.getCc().isEmpty()) {
+            message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(request.getCc()));
+        }
+        
+        // Add BCC if present
+        if (request.getBcc() != null && !request.getBcc().isEmpty()) {
+            message.setRecipients(Message.RecipientType.BCC, InternetAddress.parse(request.getBcc()));
+        }
+        
+        message.setSubject(request.getSubject());
+        
+        List<MultipartFile> files = attachments.stream().filter(file -> !file.isEmpty()).toList();
+        if (files.isEmpty()) {
+            setBody(message, request);
+        } else {
+            MimeMultipart multipart = new MimeMultipart("mixed");
             
-            log.info("✓ Email sent successfully from {} to {}", fromEmail, request.getTo());
+            MimeBodyPart body = new MimeBodyPart();
+            setBody(body, request);
+            multipart.addBodyPart(body);
             
-        } catch (MessagingException e) {
-            log.error("Failed to send email from {} to {}: {}", fromEmail, request.getTo(), e.getMessage(), e);
-            throw new MailException("Failed to send email: " + e.getMessage());
-        } catch (Exception e) {
-            log.error("Unexpected error sending email: {}", e.getMessage(), e);
-            throw new MailException("Unexpected error: " + e.getMessage());
+            for (MultipartFile file : files) {
+                MimeBodyPart part = new MimeBodyPart();
+                part.setDataHandler(new DataHandler(new MultipartFileDataSource(file)));
+                // Encoded-word in UTF-8 whatever the platform charset (what MimeParts decodes)
+                part.setFileName(MimeUtility.encodeText(fileName(file), "UTF-8", null));
+                part.setDisposition(Part.ATTACHMENT);
+                // Set up front so the content is not read an extra time to pick an encoding
+                part.setHeader("Content-Transfer-Encoding", "base64");
+                multipart.addBodyPart(part);
+            }
+            message.setContent(multipart);
+        }
+        message.setSentDate(new Date());
+        
+        return message;
+    }
+    
+    /**
+     * Set body (HTML or plain text)
+     */
+    private static void setBody(MimePart part, SendMailRequest request) throws MessagingException {
+        if (request.getIsHtml() != null && request.getIsHtml()) {
+            part.setContent(request.getBody(), "text/html; charset=utf-8");
+        } else {
+            part.setText(request.getBody(), "utf-8");
+        }
+    }
+    
+    /**
+     * Original file name without any client-side directory
+     */
+    private static String fileName(MultipartFile file) {
+        String name = file.getOriginalFilename();
+        if (name == null || name.isBlank()) {
+            return "attachment";
+        }
+        return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+    }
+    
+    /**
+     * Uploaded part as a DataSource; every read opens a fresh stream on the temp file
+     */
+    private static class MultipartFileDataSource implements DataSource {
+        
+        private final MultipartFile file;
+        
+        MultipartFileDataSource(MultipartFile file) {
+            this.file = file;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return file.getInputStream();
+        }
+        
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new UnknownServiceException("Read-only data source");
+        }
+        
+        @Override
+        public String getContentType() {
+            return file.getContentType() != null ? file.getContentType() : "application/octet-stream";
+        }
+        
+        @Override
+        public String getName() {
+            return fileName(file);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,478 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.AttachmentDTO;
+import com.btctech.mailapp.entity.Mail;
+import com.btctech.mailapp.entity.MailAccount;
+import com.btctech.mailapp.entity.MailAttachment;
+import com.btctech.mailapp.entity.MailFolder;
+import com.btctech.mailapp.exception.MailException;
+import com.btctech.mailapp.repository.MailAccountRepository;
+import com.btctech.mailapp.repository.MailAttachmentRepository;
+import com.btctech.mailapp.repository.MailFolderRepository;
+import com.btctech.mailapp.repository.MailRepository;
+import jakarta.mail.*;
+import jakarta.mail.event.MailEvent;
+import jakarta.mail.internet.InternetAddress;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.IMAPMessage;
+import org.eclipse.angus.mail.imap.MessageVanishedEvent;
+import org.eclipse.angus.mail.imap.ResyncData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the local metadata index (folders / mails / attachments tables)
+ * in sync with IMAP.
+ *
+ * Each sync only transfers what changed since the last one:
+ * - new messages: UID FETCH lastUid+1:* (headers + BODYSTRUCTURE only)
+ * - flag changes: CHANGEDSINCE HIGHESTMODSEQ (CONDSTORE), else a FLAGS scan
+ * - expunges: VANISHED (QRESYNC), else a UID set diff when counts disagree
+ *
+ * A run imports at most max-fetch-per-sync new messages (oldest first) and
+ * only counts as a completed sync when nothing was left behind. A folder
+ * that has never completed one is filled on the MailExecutor in the
+ * background instead of inside the request that first asks for it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailSyncService {
+
+    private static final int FETCH_BATCH = 500;
+
+    private static final FetchProfile SYNC_PROFILE = new FetchProfile();
+    private static final FetchProfile FLAGS_PROFILE = new FetchProfile();
+
+    static {
+        SYNC_PROFILE.add(FetchProfile.Item.ENVELOPE);
+        SYNC_PROFILE.add(FetchProfile.Item.FLAGS);
+        SYNC_PROFILE.add(FetchProfile.Item.SIZE);
+        SYNC_PROFILE.add(FetchProfile.Item.CONTENT_INFO);
+        SYNC_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+        SYNC_PROFILE.add("References");
+
+        FLAGS_PROFILE.add(FetchProfile.Item.FLAGS);
+        FLAGS_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+    }
+
+    private final ImapConnectionPool connectionPool;
+    private final MailAccountRepository mailAccountRepository;
+    private final MailFolderRepository folderRepository;
+    private final MailRepository mailRepository;
+    private final MailAttachmentRepository attachmentRepository;
+    private final MailSearchService mailSearchService;
+    private final MailThreadService mailThreadService;
+    private final MailExecutor mailExecutor;
+
+    @Value("${mail.index.sync-interval-ms:15000}")
+    private long syncIntervalMs;
+
+    @Value("${mail.index.max-fetch-per-sync:2000}")
+    private int maxFetchPerSync;
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sync a folder unless it was synced within the configured interval
+     * (and nothing has reported a change since).
+     * Returns null while the folder's first sync is still running in the background.
+     */
+    public MailFolder syncIfStale(String email, String password, String folderName) {
+        MailAccount account = getAccount(email);
+
+        MailFolder local = folderRepository.findByMailAccountIdAndName(account.getId(), folderName).orElse(null);
+        if (local == null || local.getLastSyncedAt() == null) {
+            fillInBackground(account, password, folderName);
+            return null;
+        }
+        if (!dirty.contains(syncKey(email, folderName))
+                && local.getLastSyncedAt().isAfter(LocalDateTime.now().minusNanos(syncIntervalMs * 1_000_000))) {
+            return local;
+        }
+
+        return syncFolder(account, password, folderName);
+    }
+
+    /**
+     * Sync a folder now
+     */
+    public MailFolder syncFolder(String email, String password, String folderName) {
+        return syncFolder(getAccount(email), password, folderName);
+    }
+
+    /**
+     * First sync of a folder, run to completion on the MailExecutor
+     * (one import of max-fetch-per-sync messages after another)
+     */
+    private void fillInBackground(MailAccount account, String password, String folderName) {
+        String key = syncKey(account.getEmail(), folderName);
+        if (!filling.add(key)) {
+            return;
+        }
+
+        mailExecutor.<Void>submit(account.getEmail(), () -> {
+            MailFolder local = syncFolder(account, password, folderName);
+            // Every run imports up to the cap, so this many runs are always enough
+            int runs = local.getTotalCount() / Math.max(maxFetchPerSync, 1) + 1;
+            while (local.getLastSyncedAt() == null && runs-- > 0) {
+                local = syncFolder(account, password, folderName);
+            }
+            return null;
+        }, e -> {
+            log.warn("Background sync of {}/{} failed: {}", account.getEmail(), folderName,
+                    MailExecutor.unwrap(e).getMessage());
+            return null;
+        }).whenComplete((result, e) -> filling.remove(key));
+    }
+
+    /**
+     * Force the next syncIfStale for this folder to go to IMAP
+     * (called when a push notification reports a change)
+     */
+    public void markStale(String email, String folderName) {
+        dirty.add(syncKey(email, folderName));
+    }
+
+    private MailFolder syncFolder(MailAccount account, String password, String folderName) {
+        String key = syncKey(account.getEmail(), folderName);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        dirty.remove(key);
+
+        ImapConnection connection = null;
+
+        try {
+            MailFolder local = folderRepository.findByMailAccountIdAndName(account.getId(), folderName)
+                    .orElseGet(() -> newFolder(account, folderName));
+
+            connection = connectionPool.borrow(account.getEmail(), password);
+            connection.openFolder(folderName, Folder.READ_ONLY);
+
+            boolean qresync = connection.hasCapability("QRESYNC");
+            boolean condstore = qresync || connection.hasCapability("CONDSTORE");
+
+            // Re-EXAMINE with CONDSTORE/QRESYNC so we get a fresh HIGHESTMODSEQ (and VANISHED)
+            List<MailEvent> events = Collections.emptyList();
+            if (condstore) {
+                ResyncData resyncData = qresync && local.getUidValidity() != null && local.getHighestModSeq() != null
+                        ? new ResyncData(local.getUidValidity(), local.getHighestModSeq())
+                        : ResyncData.CONDSTORE;
+                events = connection.reopenFolder(folderName, Folder.READ_ONLY, resyncData);
+            }
+            IMAPFolder folder = connection.openFolder(folderName, Folder.READ_ONLY);
+
+            // UIDVALIDITY changed - everything we know is stale
+            long uidValidity = folder.getUIDValidity();
+            if (local.getUidValidity() != null && local.getUidValidity() != uidValidity) {
+                log.warn("UIDVALIDITY changed for {}/{} - rebuilding index", account.getEmail(), folderName);
+                attachmentRepository.deleteByFolderId(local.getId());
+                mailRepository.deleteByFolderId(local.getId());
+                local.setHighestModSeq(null);
+                local.setLastSyncedAt(null);
+                events = Collections.emptyList();
+            }
+
+            Long maxUid = mailRepository.findMaxUidByFolderId(local.getId());
+            long lastUid = maxUid != null ? maxUid : 0;
+
+            // 1. New messages, oldest first and at most max-fetch-per-sync of them
+            List<Message> fresh = findNewMessages(folder, lastUid);
+            boolean complete = fresh.size() <= maxFetchPerSync;
+            if (!complete) {
+                fresh = fresh.subList(0, maxFetchPerSync);
+            }
+            int added = importMessages(account, local, folder, fresh);
+
+            // 2. Flag changes + 3. expunges
+            Set<Long> vanished = new HashSet<>();
+            for (MailEvent event : events) {
+                if (event instanceof MessageVanishedEvent) {
+                    for (long uid : ((MessageVanishedEvent) event).getUIDs()) {
+                        vanished.add(uid);
+                    }
+                }
+            }
+
+            if (lastUid > 0) {
+                if (condstore && local.getHighestModSeq() != null) {
+                    syncChangedFlags(local, folder, lastUid);
+                    if (!qresync && mailRepository.countByFolderId(local.getId()) != folder.getMessageCount()) {
+                        vanished.addAll(findVanishedUids(local, folder, lastUid));
+                    }
+                } else {
+                    vanished.addAll(scanFlags(local, folder, lastUid));
+                }
+            }
+
+            if (!vanished.isEmpty()) {
+                removeMails(local, vanished);
+                mailSearchService.remove(account.getEmail(), folderName, uidValidity, vanished);
+            }
+
+            // 4. Folder state
+            local.setUidValidity(uidValidity);
+            local.setUidNext(folder.getUIDNext());
+            long highestModSeq = condstore ? folder.getHighestModSeq() : -1;
+            local.setHighestModSeq(highestModSeq > 0 ? highestModSeq : null);
+            local.setTotalCount(folder.getMessageCount());
+            local.setUnreadCount((int) mailRepository.countByFolderIdAndIsReadFalse(local.getId()));
+            if (complete) {
+                local.setLastSyncedAt(LocalDateTime.now());
+            } else {
+                // The rest comes with the next run
+                dirty.add(key);
+            }
+            local = folderRepository.save(local);
+
+            log.info("✓ Synced {}/{}: +{} new{}, -{} expunged (modseq={})", account.getEmail(), folderName,
+                    added, complete ? "" : " (more to come)", vanished.size(), local.getHighestModSeq());
+            return local;
+
+        } catch (MessagingException e) {
+            if (connection != null) {
+                connection.invalidate();
+            }
+            dirty.add(key);
+            log.error("Failed to sync {}/{}: {}", account.getEmail(), folderName, e.getMessage(), e);
+            throw new MailException("Failed to sync mailbox: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Messages with UID > lastUid, oldest first
+     */
+    private static List<Message> findNewMessages(IMAPFolder folder, long lastUid) throws MessagingException {
+        List<Message> fresh = new ArrayList<>();
+        if (folder.getMessageCount() == 0 || (folder.getUIDNext() > 0 && folder.getUIDNext() <= lastUid + 1)) {
+            return fresh;
+        }
+
+        // "lastUid+1:*" always returns the last message, so filter on the UID
+        for (Message message : folder.getMessagesByUID(lastUid + 1, UIDFolder.MAXUID)) {
+            if (message != null && folder.getUID(message) > lastUid) {
+                fresh.add(message);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Import new messages in batches (headers + structure only)
+     */
+    private int importMessages(MailAccount account, MailFolder local, IMAPFolder folder, List<Message> fresh)
+            throws MessagingException {
+        for (int from = 0; from < fresh.size(); from += FETCH_BATCH) {
+            Message[] batch = fresh.subList(from, Math.min(from + FETCH_BATCH, fresh.size())).toArray(new Message[0]);
+            folder.fetch(batch, SYNC_PROFILE);
+
+            // Bodies (preview + full-text) only for small (incremental) syncs
+            boolean withBodies = mailSearchService.indexBodies(fresh.size());
+
+            List<Mail> mails = new ArrayList<>(batch.length);
+            List<List<AttachmentDTO>> attachments = new ArrayList<>(batch.length);
+            Map<Message, String> texts = new HashMap<>();
+            for (Message message : batch) {
+                try {
+                    List<AttachmentDTO> parts = MimeParts.collectAttachments(message);
+                    Mail mail = toMail(account, local, folder, message, !parts.isEmpty());
+                    if (withBodies) {
+                        try {
+                            String text = MessageConverter.extractText(message);
+                            texts.put(message, text);
+                            mail.setPreview(MessageConverter.preview(text));
+                        } catch (Exception e) {
+                            // An undecodable body only costs the preview, the row is still indexed
+                            log.warn("Failed to extract text of message {}: {}", mail.getUid(), e.getMessage());
+                        }
+                    }
+                    mails.add(mail);
+                    attachments.add(parts);
+                } catch (Exception e) {
+                    log.warn("Failed to index message: {}", e.getMessage());
+                }
+            }
+
+            mailThreadService.assignThreads(account.getId(), mails);
+            mails = mailRepository.saveAll(mails);
+            saveAttachments(mails, attachments);
+
+            // Full-text index: headers always, body text when it was read above
+            for (Message message : batch) {
+                mailSearchService.indexMessage(account.getEmail(), local.getName(), folder.getUIDValidity(),
+                        folder.getUID(message), message, texts.get(message));
+            }
+        }
+
+        return fresh.size();
+    }
+
+    /**
+     * CONDSTORE: only messages whose MODSEQ moved since the last sync
+     */
+    private void syncChangedFlags(MailFolder local, IMAPFolder folder, long lastUid) throws MessagingException {
+        Message[] changed = folder.getMessagesByUIDChangedSince(1, lastUid, local.getHighestModSeq());
+        for (Message message : changed) {
+            mailRepository.updateFlags(local.getId(), folder.getUID(message),
+                    message.isSet(Flags.Flag.SEEN), message.isSet(Flags.Flag.FLAGGED));
+        }
+    }
+
+    /**
+     * No CONDSTORE: fetch FLAGS for all known UIDs, update the ones that differ
+     * and return the UIDs that no longer exist on the server
+     */
+    private Set<Long> scanFlags(MailFolder local, IMAPFolder folder, long lastUid) throws MessagingException {
+        Map<Long, Mail> known = new HashMap<>();
+        for (Mail mail : mailRepository.findByFolderId(local.getId())) {
+            known.put(mail.getUid(), mail);
+        }
+
+        Message[] messages = folder.getMessagesByUID(1, lastUid);
+        folder.fetch(messages, FLAGS_PROFILE);
+
+        Set<Long> seen = new HashSet<>();
+        for (Message message : messages) {
+            if (message == null) {
+                continue;
+            }
+            long uid = folder.getUID(message);
+            seen.add(uid);
+
+            Mail mail = known.get(uid);
+            boolean read = message.isSet(Flags.Flag.SEEN);
+            boolean starred = message.isSet(Flags.Flag.FLAGGED);
+            if (mail != null && (mail.getIsRead() != read || mail.getIsStarred() != starred)) {
+                mailRepository.updateFlags(local.getId(), uid, read, starred);
+            }
+        }
+
+        Set<Long> vanished = new HashSet<>(known.keySet());
+        vanished.removeAll(seen);
+        return vanished;
+    }
+
+    /**
+     * UID set diff - only used when CONDSTORE is available but QRESYNC is not
+     */
+    private Set<Long> findVanishedUids(MailFolder local, IMAPFolder folder, long lastUid) throws MessagingException {
+        Set<Long> serverUids = new HashSet<>();
+        for (Message message : folder.getMessagesByUID(1, lastUid)) {
+            if (message != null) {
+                serverUids.add(folder.getUID(message));
+            }
+        }
+
+        Set<Long> vanished = new HashSet<>(mailRepository.findUidsByFolderId(local.getId()));
+        vanished.removeAll(serverUids);
+        vanished.removeIf(uid -> uid > lastUid);
+        return vanished;
+    }
+
+    private void removeMails(MailFolder local, Set<Long> uids) {
+        List<Long> mailIds = mailRepository.findByFolderIdAndUidIn(local.getId(), uids).stream()
+                .map(Mail::getId)
+                .collect(Collectors.toList());
+        if (!mailIds.isEmpty()) {
+            attachmentRepository.deleteByMailIdIn(mailIds);
+        }
+        mailRepository.deleteByFolderIdAndUidIn(local.getId(), uids);
+    }
+
+    private void saveAttachments(List<Mail> mails, List<List<AttachmentDTO>> attachments) {
+        List<MailAttachment> rows = new ArrayList<>();
+        for (int i = 0; i < mails.size(); i++) {
+            for (AttachmentDTO part : attachments.get(i)) {
+                MailAttachment row = new MailAttachment();
+                row.setMailId(mails.get(i).getId());
+                row.setPartId(part.getPartId());
+                row.setFilename(part.getFilename());
+                row.setContentType(part.getContentType());
+                row.setSizeBytes(part.getSize());
+                rows.add(row);
+            }
+        }
+        if (!rows.isEmpty()) {
+            attachmentRepository.saveAll(rows);
+        }
+    }
+
+    private Mail toMail(MailAccount account, MailFolder local, IMAPFolder folder, Message message,
+                        boolean hasAttachments) throws MessagingException {
+        Mail mail = new Mail();
+        mail.setMailAccountId(account.getId());
+        mail.setFolderId(local.getId());
+        mail.setUid(folder.getUID(message));
+
+        IMAPMessage imapMessage = (IMAPMessage) message;
+        mail.setMessageId(imapMessage.getMessageID());
+        mail.setInReplyTo(imapMessage.getInReplyTo());
+        mail.setReferences(message.getHeader("References") != null
+                ? String.join(" ", message.getHeader("References")) : null);
+
+        Address[] from = message.getFrom();
+        if (from != null && from.length > 0) {
+            mail.setFromAddress(((InternetAddress) from[0]).getAddress());
+        }
+        mail.setToAddress(joinAddresses(message.getRecipients(Message.RecipientType.TO)));
+        mail.setCcAddress(joinAddresses(message.getRecipients(Message.RecipientType.CC)));
+
+        String subject = message.getSubject();
+        mail.setSubject(subject != null && subject.length() > 500 ? subject.substring(0, 500) : subject);
+        mail.setSentDate(toLocalDateTime(message.getSentDate()));
+        mail.setReceivedDate(toLocalDateTime(message.getReceivedDate()));
+
+        mail.setIsRead(message.isSet(Flags.Flag.SEEN));
+        mail.setIsStarred(message.isSet(Flags.Flag.FLAGGED));
+        mail.setIsDeleted(message.isSet(Flags.Flag.DELETED));
+        mail.setHasAttachments(hasAttachments);
+        mail.setSizeBytes((long) Math.max(message.getSize(), 0));
+        return mail;
+    }
+
+    private MailFolder newFolder(MailAccount account, String folderName) {
+        MailFolder folder = new MailFolder();
+        folder.setMailAccountId(account.getId());
+        folder.setName(folderName);
+        folder.setFolderType("INBOX".equalsIgnoreCase(folderName) ? "INBOX" : "CUSTOM");
+        return folderRepository.save(folder);
+    }
+
+    private static String syncKey(String email, String folderName) {
+        return email + "/" + folderName;
+    }
+
+    private MailAccount getAccount(String email) {
+        return mailAccountRepository.findByEmail(email)
+                .orElseThrow(() -> new MailException("Mail account not found: " + email));
+    }
+
+    private static String joinAddresses(Address[] addresses) {
+        if (addresses == null || addresses.length == 0) {
+            return null;
+        }
+        return Arrays.stream(addresses)
+                .map(a -> a instanceof InternetAddress ? ((InternetAddress) a).getAddress() : a.toString())
+                .collect(Collectors.joining(", "));
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.btctech.mailapp.service;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text with "{{name}}" placeholders, parsed once and rendered per recipient.
+ * Unknown names render empty; values are HTML-escaped for HTML bodies.
+ */
+final class MailTemplate {
+
+    private final List<String> literals = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final int length;
+
+    private MailTemplate(String template) {
+        int pos = 0;
+        int start;
+        while ((start = template.indexOf("{{", pos)) >= 0) {
+            int end = template.indexOf("}}", start + 2);
+            if (end < 0) {
+                break;
+            }
+            literals.add(template.substring(pos, start));
+            names.add(template.substring(start + 2, end).trim());
+            pos = end + 2;
+        }
+        literals.add(template.substring(pos));
+        length = template.length();
+    }
+
+    static MailTemplate compile(String template) {
+        return new MailTemplate(template);
+    }
+
+    String render(Map<String, String> variables, boolean html) {
+        StringBuilder sb = new StringBuilder(length + 64);
+        for (int i = 0; i < names.size(); i++) {
+            sb.append(literals.get(i));
+            String value = variables.get(names.get(i));
+            if (value != null) {
+                sb.append(html ? HtmlUtils.htmlEscape(value) : value);
+            }
+        }
+        return sb.append(literals.get(names.size())).toString();
+    }
+}
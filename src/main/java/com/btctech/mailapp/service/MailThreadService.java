@@ -0,0 +1,181 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.entity.Mail;
+import com.btctech.mailapp.repository.MailRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups indexed mail into conversations from Message-ID, In-Reply-To and
+ * References (all part of the header-only sync pass).
+ *
+ * A thread is identified by a hash of its root Message-ID - the first entry
+ * of References, or the In-Reply-To / own Message-ID when there is none - so
+ * most messages land in the right thread without looking at any other row.
+ * Where a reference resolves to an already indexed message, that message's
+ * thread wins; a reply that arrived before its parent is moved over once the
+ * parent is indexed. Threads span folders of the account (replies in Sent).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailThreadService {
+
+    private static final int BACKFILL_BATCH = 1000;
+
+    private final MailRepository mailRepository;
+
+    /**
+     * Set the thread of a batch of new (not yet saved) rows of one account
+     */
+    public void assignThreads(Long accountId, List<Mail> mails) {
+        if (mails.isEmpty()) {
+            return;
+        }
+
+        // One lookup for every referenced message of the batch
+        Set<String> referenced = new HashSet<>();
+        for (Mail mail : mails) {
+            referenced.addAll(references(mail));
+        }
+        Map<String, String> known = new HashMap<>();
+        if (!referenced.isEmpty()) {
+            for (Mail existing : mailRepository.findByMailAccountIdAndMessageIdIn(accountId, referenced)) {
+                if (existing.getThreadId() != null) {
+                    known.put(existing.getMessageId(), existing.getThreadId());
+                }
+            }
+        }
+
+        // Replies indexed earlier may be keyed on one of these messages instead of its root
+        Map<String, String> provisional = new HashMap<>();
+
+        for (Mail mail : mails) {
+            List<String> references = references(mail);
+
+            String threadId = null;
+            for (String reference : references) {
+                threadId = known.get(reference);
+                if (threadId != null) {
+                    break;
+                }
+            }
+            if (threadId == null) {
+                String root = !references.isEmpty() ? references.get(0) : mail.getMessageId();
+                threadId = root != null ? threadId(root) : threadId("<" + mail.getFolderId() + "." + mail.getUid() + ">");
+            }
+
+            mail.setThreadId(threadId);
+            if (mail.getMessageId() != null) {
+                known.putIfAbsent(mail.getMessageId(), threadId);
+                String ownKey = threadId(mail.getMessageId());
+                if (!ownKey.equals(threadId)) {
+                    provisional.put(ownKey, threadId);
+                }
+            }
+        }
+
+        // Follow chains (a reply keyed on its parent, the parent moved to its root) to the end
+        Map<String, String> moved = new HashMap<>();
+        for (String from : provisional.keySet()) {
+            String to = resolve(provisional, from);
+            if (!to.equals(from)) {
+                moved.put(from, to);
+            }
+        }
+        if (moved.isEmpty()) {
+            return;
+        }
+
+        // Replies earlier in this batch are not saved yet, so the UPDATE below cannot reach them
+        for (Mail mail : mails) {
+            String to = moved.get(mail.getThreadId());
+            if (to != null) {
+                mail.setThreadId(to);
+            }
+        }
+        for (String orphaned : mailRepository.findThreadIdsIn(accountId, moved.keySet())) {
+            mailRepository.moveThread(accountId, orphaned, moved.get(orphaned));
+        }
+    }
+
+    /**
+     * Thread rows indexed before threading existed (no-op once done)
+     */
+    public void backfill(Long accountId) {
+        int total = 0;
+        List<Mail> batch;
+        while (!(batch = mailRepository.findByMailAccountIdAndThreadIdIsNullOrderByIdAsc(
+                accountId, PageRequest.of(0, BACKFILL_BATCH))).isEmpty()) {
+            assignThreads(accountId, batch);
+            mailRepository.saveAll(batch);
+            total += batch.size();
+        }
+        if (total > 0) {
+            log.info("Threaded {} previously indexed messages of account {}", total, accountId);
+        }
+    }
+
+    /**
+     * Where a provisional thread ends up after following every re-keying (a cycle stops the walk)
+     */
+    static String resolve(Map<String, String> provisional, String threadId) {
+        Set<String> seen = new HashSet<>();
+        String current = threadId;
+        while (provisional.containsKey(current) && seen.add(current)) {
+            current = provisional.get(current);
+        }
+        return current;
+    }
+
+    /**
+     * Referenced Message-IDs, root first (References, then In-Reply-To)
+     */
+    static List<String> references(Mail mail) {
+        Set<String> ids = new LinkedHashSet<>();
+        addIds(mail.getReferences(), ids);
+        addIds(mail.getInReplyTo(), ids);
+        if (mail.getMessageId() != null) {
+            ids.remove(mail.getMessageId());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Collect "<...>" tokens (comments and other noise around them are ignored)
+     */
+    private static void addIds(String header, Collection<String> out) {
+        if (header == null) {
+            return;
+        }
+        int start = header.indexOf('<');
+        while (start >= 0) {
+            int end = header.indexOf('>', start + 1);
+            if (end < 0) {
+                return;
+            }
+            if (end > start + 1 && end - start < 1000) {
+                out.add(header.substring(start, end + 1));
+            }
+            start = header.indexOf('<', end + 1);
+        }
+    }
+
+    /**
+     * Stable, URL-safe thread id for a root Message-ID
+     */
+    static String threadId(String messageId) {
+        return Hashes.sha256Hex(messageId.trim(), 16);
+    }
+}
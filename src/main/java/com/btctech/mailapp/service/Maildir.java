@@ -0,0 +1,211 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.exception.MailException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Helpers for the Maildir++ layout created by MailboxService and maintained
+ * by Dovecot: INBOX lives in new/ + cur/, other folders in .Name/ subdirs.
+ * A file name is "base[:2,FLAGS]"; flags are single letters in ASCII order
+ * (D draft, F flagged, R replied, S seen, T trashed).
+ */
+public final class Maildir {
+
+    public static final String UIDLIST = "dovecot-uidlist";
+
+    private static final String INFO_SEPARATOR = ":2,";
+
+    private Maildir() {
+    }
+
+    /**
+     * The Maildir root of an account. MailboxService stores the account
+     * directory and creates the Maildir inside it.
+     */
+    public static Path locate(String maildirPath) {
+        Path path = Paths.get(maildirPath);
+        if (Files.isDirectory(path.resolve("cur"))) {
+            return path;
+        }
+        return path.resolve("Maildir");
+    }
+
+    /**
+     * Directory of a folder ("INBOX" is the Maildir root itself)
+     */
+    public static Path folderDir(Path maildir, String folder) {
+        if (folder == null || folder.equalsIgnoreCase("INBOX")) {
+            return maildir;
+        }
+        if (folder.isEmpty() || folder.startsWith(".") || folder.contains("/") || folder.contains("\\")) {
+            throw new MailException("Invalid folder name: " + folder);
+        }
+        return maildir.resolve("." + folder);
+    }
+
+    /**
+     * Folder name of a folder directory, or null if it is not one
+     */
+    public static String folderName(Path maildir, Path dir) {
+        if (dir.equals(maildir)) {
+            return "INBOX";
+        }
+        String name = dir.getFileName().toString();
+        if (dir.getParent() != null && dir.getParent().equals(maildir) && name.startsWith(".") && name.length() > 1) {
+            return name.substring(1);
+        }
+        return null;
+    }
+
+    /**
+     * Unique part of a file name (without the ":2,flags" info)
+     */
+    public static String baseName(String fileName) {
+        int idx = fileName.indexOf(INFO_SEPARATOR);
+        return idx >= 0 ? fileName.substring(0, idx) : fileName;
+    }
+
+    public static String flags(String fileName) {
+        int idx = fileName.indexOf(INFO_SEPARATOR);
+        return idx >= 0 ? fileName.substring(idx + INFO_SEPARATOR.length()) : "";
+    }
+
+    /**
+     * Seen if the message is in cur/ with the S flag (messages in new/ never are)
+     */
+    public static boolean isSeen(String fileName, boolean inNew) {
+        return !inNew && flags(fileName).indexOf('S') >= 0;
+    }
+
+    public static boolean isFlagged(String fileName) {
+        return flags(fileName).indexOf('F') >= 0;
+    }
+
+    /**
+     * Delivery time from the standard "seconds.unique.host" file name, or 0
+     */
+    public static long deliveredAt(String fileName) {
+        int dot = fileName.indexOf('.');
+        if (dot <= 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, dot)) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse Dovecot's UID list of a folder (format version 1 or 3), or null if absent.
+     * This is where Dovecot keeps the IMAP UIDs and UIDVALIDITY of Maildir files.
+     */
+    public static UidList readUidList(Path folderDir) throws IOException {
+        Path file = folderDir.resolve(UIDLIST);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return null;
+            }
+
+            String[] fields = header.split(" ");
+            int version = Integer.parseInt(fields[0]);
+            long uidValidity = 0;
+            long uidNext = 0;
+
+            if (version == 1 && fields.length >= 3) {
+                uidValidity = Long.parseLong(fields[1]);
+                uidNext = Long.parseLong(fields[2]);
+            } else {
+                for (String field : fields) {
+                    if (field.startsWith("V")) {
+                        uidValidity = Long.parseLong(field.substring(1));
+                    } else if (field.startsWith("N")) {
+                        uidNext = Long.parseLong(field.substring(1));
+                    }
+                }
+            }
+
+            UidList list = new UidList(uidValidity, uidNext);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+
+                long uid;
+                try {
+                    uid = Long.parseLong(line.substring(0, space));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                // v3: "uid [extensions] :filename", v1: "uid filename"
+                String rest = line.substring(space + 1);
+                int colon = rest.indexOf(':');
+                String base = baseName(version >= 3 && colon >= 0 ? rest.substring(colon + 1) : rest.trim());
+                list.add(uid, base);
+            }
+            return list;
+        }
+    }
+
+    /**
+     * UID assignments of one folder
+     */
+    public static final class UidList {
+        private final long uidValidity;
+        private final long uidNext;
+        private final NavigableMap<Long, String> byUid = new TreeMap<>();
+        private final Map<String, Long> byBaseName = new HashMap<>();
+
+        UidList(long uidValidity, long uidNext) {
+            this.uidValidity = uidValidity;
+            this.uidNext = uidNext;
+        }
+
+        void add(long uid, String baseName) {
+            byUid.put(uid, baseName);
+            byBaseName.put(baseName, uid);
+        }
+
+        public long getUidValidity() {
+            return uidValidity;
+        }
+
+        public long getUidNext() {
+            return uidNext;
+        }
+
+        public String baseName(long uid) {
+            return byUid.get(uid);
+        }
+
+        public Long uid(String baseName) {
+            return byBaseName.get(baseName);
+        }
+
+        /**
+         * UID -> base name, highest UID first
+         */
+        public NavigableMap<Long, String> newestFirst() {
+            return byUid.descendingMap();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.FolderDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory total/unread counts per Maildir folder.
+ * A mailbox is scanned once when first asked for, then kept current from
+ * WatchService events on new/ and cur/ - the seen state is part of the file
+ * name, so every delivery, flag change and expunge is a create/delete event.
+ * A folder is only rescanned when the watch overflows.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MaildirCounterService {
+
+    private final MaildirLocator maildirLocator;
+
+    @Value("${mail.maildir.counters-enabled:false}")
+    private boolean enabled;
+
+    @Value("${mail.maildir.counters-idle-ms:1800000}")
+    private long idleMs;
+
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Watched> watched = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        watchThread = new Thread(this::watchLoop, "maildir-counters");
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        log.info("Maildir counters enabled (idle mailboxes dropped after {}ms)", idleMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts of every folder of the account, INBOX and the standard folders
+     * first, or null if the account has no local Maildir
+     */
+    public List<FolderDTO> getFolderCounts(String email) {
+        Mailbox mailbox = track(email);
+        if (mailbox == null) {
+            return null;
+        }
+
+        List<FolderDTO> result = new ArrayList<>(mailbox.folders.size());
+        for (FolderCounts counts : mailbox.folders.values()) {
+            result.add(counts.toDTO());
+        }
+        MailReceiveService.sortFolders(result);
+        return result;
+    }
+
+    /**
+     * Unread count of a folder, or -1 if it is not known locally
+     */
+    public int getUnreadCount(String email, String folder) {
+        Mailbox mailbox = track(email);
+        if (mailbox == null) {
+            return -1;
+        }
+        FolderCounts counts = mailbox.folders.get(folder);
+        return counts != null ? counts.unread() : -1;
+    }
+
+    /**
+     * Stop watching mailboxes nobody asked about for a while (inotify watches are limited)
+     */
+    @Scheduled(fixedDelayString = "${mail.maildir.counters-idle-check-ms:300000}")
+    public void dropIdle() {
+        long now = System.currentTimeMillis();
+        mailboxes.entrySet().removeIf(entry -> {
+            if (now - entry.getValue().lastAccess <= idleMs) {
+                return false;
+            }
+            for (WatchKey key : entry.getValue().keys) {
+                watched.remove(key);
+                key.cancel();
+            }
+            log.debug("Stopped counting idle mailbox {}", entry.getKey());
+            return true;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Error closing Maildir watch service: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Mailbox track(String email) {
+        if (!enabled) {
+            return null;
+        }
+
+        Mailbox mailbox = mailboxes.get(email);
+        if (mailbox == null) {
+            Path maildir = maildirLocator.find(email);
+            if (maildir == null) {
+                return null;
+            }
+            mailbox = mailboxes.computeIfAbsent(email, k -> open(k, maildir));
+        }
+
+        mailbox.lastAccess = System.currentTimeMillis();
+        return mailbox;
+    }
+
+    /**
+     * Register watches first, then scan - events racing the scan are
+     * idempotent because counts are kept as sets of file names
+     */
+    private Mailbox open(String email, Path maildir) {
+        Mailbox mailbox = new Mailbox(maildir);
+
+        try {
+            // Root watch catches folders created later (".Name" directories)
+            mailbox.keys.add(register(maildir, new Watched(mailbox, null, false)));
+            addFolder(mailbox, "INBOX", maildir);
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(maildir, Files::isDirectory)) {
+                for (Path dir : stream) {
+                    String name = Maildir.folderName(maildir, dir);
+                    if (name != null) {
+                        addFolder(mailbox, name, dir);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not watch Maildir of {}: {}", email, e.getMessage());
+        }
+
+        log.debug("Counting {} folders of {}", mailbox.folders.size(), email);
+        return mailbox;
+    }
+
+    private void addFolder(Mailbox mailbox, String name, Path dir) throws IOException {
+        if (!Files.isDirectory(dir.resolve("cur")) || mailbox.folders.containsKey(name)) {
+            return;
+        }
+
+        FolderCounts counts = new FolderCounts(name);
+        mailbox.folders.put(name, counts);
+
+        mailbox.keys.add(register(dir.resolve("new"), new Watched(mailbox, counts, true)));
+        mailbox.keys.add(register(dir.resolve("cur"), new Watched(mailbox, counts, false)));
+
+        counts.rescan(dir, true);
+        counts.rescan(dir, false);
+    }
+
+    private WatchKey register(Path dir, Watched target) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        watched.put(key, target);
+        return key;
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Watched target = watched.get(key);
+            if (target != null) {
+                try {
+                    handle(key, target);
+                } catch (RuntimeException e) {
+                    log.warn("Error applying Maildir events: {}", e.getMessage());
+                }
+            }
+
+            if (!key.reset()) {
+                watched.remove(key);
+            }
+        }
+    }
+
+    private void handle(WatchKey key, Watched target) {
+        Path dir = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                if (target.counts != null) {
+                    log.debug("Watch overflow on {}, rescanning", dir);
+                    target.counts.rescan(dir.getParent(), target.inNew);
+                }
+                continue;
+            }
+
+            Path name = (Path) event.context();
+            String fileName = name.toString();
+
+            if (target.counts == null) {
+                // Maildir root: a new folder appeared
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    Path folderDir = dir.resolve(name);
+                    String folder = Maildir.folderName(target.mailbox.maildir, folderDir);
+                    if (folder != null) {
+                        try {
+                            addFolder(target.mailbox, folder, folderDir);
+                        } catch (IOException e) {
+                            log.debug("Could not watch new folder {}: {}", folderDir, e.getMessage());
+                        }
+                    }
+                }
+                continue;
+            }
+
+            if (fileName.startsWith(".")) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                target.counts.add(fileName, target.inNew);
+            } else {
+                target.counts.remove(fileName, target.inNew);
+            }
+        }
+    }
+
+    private static final class Mailbox {
+        private final Path maildir;
+        private final Map<String, FolderCounts> folders = new ConcurrentHashMap<>();
+        private final List<WatchKey> keys = new CopyOnWriteArrayList<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Mailbox(Path maildir) {
+            this.maildir = maildir;
+        }
+    }
+
+    /**
+     * File names currently in new/ and cur/; unread = those without the S flag
+     */
+    private static final class FolderCounts {
+        private final String name;
+        private final Set<String> inNew = new HashSet<>();
+        private final Set<String> inCur = new HashSet<>();
+        private int unread;
+
+        FolderCounts(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(String fileName, boolean isNew) {
+            if ((isNew ? inNew : inCur).add(fileName) && !Maildir.isSeen(fileName, isNew)) {
+                unread++;
+            }
+        }
+
+        synchronized void remove(String fileName, boolean isNew) {
+            if ((isNew ? inNew : inCur).remove(fileName) && !Maildir.isSeen(fileName, isNew)) {
+                unread--;
+            }
+        }
+
+        synchronized void rescan(Path folderDir, boolean isNew) {
+            Set<String> files = isNew ? inNew : inCur;
+            for (String fileName : files) {
+                if (!Maildir.isSeen(fileName, isNew)) {
+                    unread--;
+                }
+            }
+            files.clear();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folderDir.resolve(isNew ? "new" : "cur"))) {
+                for (Path path : stream) {
+                    String fileName = path.getFileName().toString();
+                    if (!fileName.startsWith(".")) {
+                        add(fileName, isNew);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Could not scan {}: {}", folderDir, e.getMessage());
+            }
+        }
+
+        synchronized int unread() {
+            return unread;
+        }
+
+        synchronized FolderDTO toDTO() {
+            return FolderDTO.builder()
+                    .name(name)
+                    .totalCount(inNew.size() + inCur.size())
+                    .unreadCount(unread)
+                    .build();
+        }
+    }
+
+    private record Watched(Mailbox mailbox, FolderCounts counts, boolean inNew) {
+    }
+}
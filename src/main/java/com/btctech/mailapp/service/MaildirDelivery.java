@@ -0,0 +1,269 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.entity.MailAccount;
+import com.btctech.mailapp.repository.MailAccountRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.Address;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MailDateFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers mail between accounts of this host straight into the recipients'
+ * Maildirs instead of over STARTTLS + AUTH to Postfix and back down to the
+ * same disk. The message is written once into tmp/ of the first mailbox,
+ * hard-linked into tmp/ of the others, and only then renamed into new/ -
+ * each rename is atomic, so Dovecot never sees a partial file.
+ *
+ * Only used when every envelope recipient is an active account with a
+ * Maildir here; anything else goes to Postfix as before.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MaildirDelivery {
+
+    private final MailAccountRepository mailAccountRepository;
+    private final MaildirLocator maildirLocator;
+
+    @Value("${mail.maildir.local-delivery:false}")
+    private boolean enabled;
+
+    private final AtomicLong counter = new AtomicLong();
+    private String host;
+    private long pid;
+
+    @PostConstruct
+    void init() {
+        pid = ProcessHandle.current().pid();
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        // "/" and ":" would break the file name (Maildir spec escapes)
+        host = host.replace("/", "\\057").replace(":", "\\072");
+
+        if (enabled) {
+            log.info("Local Maildir delivery enabled on {}", host);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Maildir root per recipient, or null if any recipient is not an active
+     * account on this host (the message then goes over SMTP)
+     */
+    public Map<InternetAddress, Path> resolve(Address[] recipients) {
+        if (!enabled || recipients == null || recipients.length == 0) {
+            return null;
+        }
+
+        Map<InternetAddress, Path> maildirs = new LinkedHashMap<>();
+        for (Address recipient : recipients) {
+            if (!(recipient instanceof InternetAddress internet) || internet.getAddress() == null) {
+                return null;
+            }
+            String email = internet.getAddress().toLowerCase(Locale.ROOT);
+
+            MailAccount account = mailAccountRepository.findByEmail(email).orElse(null);
+            if (account == null || !Boolean.TRUE.equals(account.getActive())) {
+                return null;
+            }
+            Path maildir = maildirLocator.find(email);
+            if (maildir == null || !Files.isDirectory(maildir.resolve("tmp"))
+                    || !Files.isDirectory(maildir.resolve("new"))) {
+                return null;
+            }
+
+            // One copy per mailbox, however often it is named
+            if (!maildirs.containsValue(maildir)) {
+                maildirs.put(internet, maildir);
+            }
+        }
+        return maildirs;
+    }
+
+    /**
+     * Deliver the message (as stored for SMTP, CRLF line ends) to the
+     * resolved mailboxes. Nothing is visible until every copy is in tmp/;
+     * a failure while renaming reports the mailboxes already delivered to
+     * as the valid sent addresses of a SendFailedException (the rest as valid
+     * unsent, which the queue retries).
+     */
+    public void deliver(String fromEmail, Map<InternetAddress, Path> maildirs, InputStream message)
+            throws IOException, SendFailedException {
+        long now = System.currentTimeMillis();
+        String unique = (now / 1000) + ".M" + (now % 1000) * 1000 + "P" + pid
+                + "Q" + counter.incrementAndGet() + "." + host;
+
+        List<Map.Entry<InternetAddress, Path>> targets = new ArrayList<>(maildirs.entrySet());
+        List<Path> staged = new ArrayList<>(targets.size());
+        String name;
+
+        try {
+            // Written once and synced before anything points at it
+            Path first = targets.get(0).getValue().resolve("tmp").resolve(unique);
+            staged.add(first);
+            LineEnds counted;
+            try (FileChannel channel = FileChannel.open(first, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                counted = new LineEnds(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                counted.write(trace(fromEmail, now));
+                message.transferTo(counted);
+                counted.flush();
+                channel.force(true);
+            }
+            // Sizes let Dovecot answer RFC822.SIZE and quota without reading the file
+            name = unique + ",S=" + counted.size + ",W=" + (counted.size + counted.lines);
+
+            for (int i = 1; i < targets.size(); i++) {
+                Path tmp = targets.get(i).getValue().resolve("tmp").resolve(unique);
+                try {
+                    Files.createLink(tmp, first);
+                } catch (IOException | UnsupportedOperationException e) {
+                    // Mailboxes on another filesystem get their own copy
+                    Files.copy(first, tmp);
+                }
+                staged.add(tmp);
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(staged);
+            throw e;
+        }
+
+        List<Address> delivered = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            Path target = targets.get(i).getValue().resolve("new").resolve(name);
+            try {
+                Files.move(staged.get(i), target, StandardCopyOption.ATOMIC_MOVE);
+                delivered.add(targets.get(i).getKey());
+            } catch (IOException e) {
+                discard(staged.subList(i, staged.size()));
+                if (delivered.isEmpty()) {
+                    throw e;
+                }
+                List<Address> undelivered = new ArrayList<>();
+                for (int j = i; j < targets.size(); j++) {
+                    undelivered.add(targets.get(j).getKey());
+                }
+                throw new SendFailedException("Local delivery failed: " + e.getMessage(), e,
+                        delivered.toArray(new Address[0]), undelivered.toArray(new Address[0]), null);
+            }
+        }
+
+        log.debug("Delivered {} locally to {} mailboxes", name, targets.size());
+    }
+
+    /**
+     * What Postfix and the LDA would have added on the way
+     */
+    private byte[] trace(String fromEmail, long now) {
+        String date = new MailDateFormat().format(new Date(now));
+        return ("Return-Path: <" + fromEmail + ">\n"
+                + "Received: from mailapp by " + host + " (local delivery); " + date + "\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void discard(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stores CRLF as LF, as Dovecot keeps its Maildirs, and counts the
+     * bytes written and the line ends converted
+     */
+    static final class LineEnds extends FilterOutputStream {
+        private boolean pendingCr;
+        long size;
+        long lines;
+
+        LineEnds(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (pendingCr) {
+                pendingCr = false;
+                if (b != '\n') {
+                    emit('\r');
+                }
+            }
+            if (b == '\r') {
+                pendingCr = true;
+                return;
+            }
+            if (b == '\n') {
+                lines++;
+            }
+            emit(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // Runs without CR are passed through in one piece
+            int end = off + len;
+            int run = off;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\r' || pendingCr) {
+                    out.write(b, run, i - run);
+                    size += i - run;
+                    write(b[i]);
+                    run = i + 1;
+                } else if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+            out.write(b, run, end - run);
+            size += end - run;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pendingCr) {
+                pendingCr = false;
+                emit('\r');
+            }
+            out.flush();
+        }
+
+        private void emit(int b) throws IOException {
+            out.write(b);
+            size++;
+        }
+    }
+}
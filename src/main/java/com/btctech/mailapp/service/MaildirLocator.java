@@ -0,0 +1,46 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.entity.MailAccount;
+import com.btctech.mailapp.repository.MailAccountRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves an account's Maildir on this host (cached after the first lookup)
+ */
+@Service
+@RequiredArgsConstructor
+public class MaildirLocator {
+
+    private final MailAccountRepository mailAccountRepository;
+
+    private final Map<String, Path> maildirs = new ConcurrentHashMap<>();
+
+    /**
+     * The account's Maildir root, or null if the account has none on this host
+     */
+    public Path find(String email) {
+        Path cached = maildirs.get(email);
+        if (cached != null) {
+            return cached;
+        }
+
+        MailAccount account = mailAccountRepository.findByEmail(email).orElse(null);
+        if (account == null || account.getMaildirPath() == null) {
+            return null;
+        }
+
+        Path maildir = Maildir.locate(account.getMaildirPath());
+        if (!Files.isDirectory(maildir.resolve("cur"))) {
+            return null;
+        }
+
+        maildirs.put(email, maildir);
+        return maildir;
+    }
+}
@@ -0,0 +1,354 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.InboxCursor;
+import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.exception.MailException;
+import jakarta.mail.Flags;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedFileInputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads mailboxes straight from the local Maildir when the backend runs on
+ * the same host as Dovecot - no TLS, no IMAP round trips, no LOGIN.
+ * UIDs and UIDVALIDITY come from Dovecot's own dovecot-uidlist, so results
+ * are interchangeable with the IMAP path. Messages Dovecot has not assigned
+ * a UID yet (fresh deliveries nobody has looked at) are served over IMAP,
+ * which also makes Dovecot assign them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MaildirReader implements MailReader {
+
+    private static final Session PARSE_SESSION = Session.getInstance(new Properties());
+
+    private final MaildirLocator maildirLocator;
+    private final MailReceiveService mailReceiveService;
+    private final MessageBodyCache messageBodyCache;
+    private final MailSearchService mailSearchService;
+    private final MaildirCounterService maildirCounterService;
+
+    @Value("${mail.maildir.read-enabled:false}")
+    private boolean enabled;
+
+    private final Map<Path, CachedUidList> uidLists = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True if the account's folder is on this host and indexed by Dovecot
+     */
+    public boolean canServe(String email, String folder) {
+        if (!enabled) {
+            return false;
+        }
+        Path maildir = maildir(email);
+        return maildir != null && Files.isReadable(Maildir.folderDir(maildir, folder).resolve(Maildir.UIDLIST));
+    }
+
+    @Override
+    public InboxResponse getMessages(String email, String password, String folder, int limit, String cursor) {
+        Path dir = requireFolder(email, folder);
+        InboxCursor after = cursor != null && !cursor.isEmpty() ? InboxCursor.decode(cursor) : null;
+
+        try {
+            Maildir.UidList uidList = uidList(dir);
+            Map<String, MaildirFile> files = listFiles(dir);
+
+            if (hasUnassigned(files, uidList)) {
+                log.debug("Maildir of {} has messages without UIDs yet, reading {} over IMAP", email, folder);
+                return mailReceiveService.getMessages(email, password, folder, limit, cursor);
+            }
+
+            long uidValidity = uidList.getUidValidity();
+            if (after != null && after.getUidValidity() != uidValidity) {
+                throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please reload from the first page.");
+            }
+
+            int unread = 0;
+            for (MaildirFile file : files.values()) {
+                if (!file.seen) {
+                    unread++;
+                }
+            }
+
+            // Walk UIDs newest first below the cursor, skipping expunged ones
+            long belowUid = after != null ? after.getLastUid() : Long.MAX_VALUE;
+            List<EmailDTO> emails = new ArrayList<>(limit);
+            boolean hasMore = false;
+
+            for (Map.Entry<Long, String> entry : uidList.newestFirst().tailMap(belowUid, false).entrySet()) {
+                MaildirFile file = files.get(entry.getValue());
+                if (file == null) {
+                    continue;
+                }
+                if (emails.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+
+                EmailDTO dto = readSummary(file, entry.getKey(), uidValidity);
+                if (dto != null) {
+                    emails.add(dto);
+                }
+            }
+
+            String nextCursor = hasMore && !emails.isEmpty()
+                    ? new InboxCursor(uidValidity, Long.parseLong(emails.get(emails.size() - 1).getUid())).encode()
+                    : null;
+
+            log.debug("Served {} emails of {} for {} from Maildir", emails.size(), folder, email);
+
+            return InboxResponse.builder()
+                    .email(email)
+                    .folder(folder)
+                    .totalCount(files.size())
+                    .unreadCount(unread)
+                    .uidValidity(uidValidity)
+                    .uidNext(uidList.getUidNext())
+                    .emails(emails)
+                    .hasMore(hasMore)
+                    .nextCursor(nextCursor)
+                    .build();
+
+        } catch (IOException | MessagingException e) {
+            log.error("Failed to read Maildir folder {} of {}: {}", folder, email, e.getMessage(), e);
+            throw new MailException("Failed to fetch emails: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public EmailDTO getEmail(String email, String password, String folder, String uid, Long uidValidity) {
+        long messageUid = MailReceiveService.parseUid(uid);
+        Path dir = requireFolder(email, folder);
+
+        try {
+            Maildir.UidList uidList = uidList(dir);
+            long currentValidity = uidList.getUidValidity();
+
+            if (uidValidity != null && uidValidity != currentValidity) {
+                throw new MailException("Mailbox has changed (UIDVALIDITY mismatch). Please refresh the inbox.");
+            }
+
+            String baseName = uidList.baseName(messageUid);
+            MaildirFile file = baseName != null ? findFile(dir, baseName) : null;
+            if (file == null) {
+                if (messageUid >= uidList.getUidNext() || baseName != null) {
+                    // Not assigned yet, or renamed/expunged under us - let Dovecot answer
+                    return mailReceiveService.getEmail(email, password, folder, uid, uidValidity);
+                }
+                throw new MailException("Email not found");
+            }
+
+            // Flags live in the file name, so they are current even for a cached body
+            EmailDTO cached = messageBodyCache.get(email, folder, currentValidity, messageUid);
+            if (cached != null) {
+                cached.setRead(file.seen);
+                return cached;
+            }
+
+            EmailDTO dto = read(file, message -> MessageConverter.toEmail(message, messageUid, currentValidity));
+            applyFileInfo(dto, file);
+
+            messageBodyCache.put(email, folder, currentValidity, messageUid, dto);
+            mailSearchService.indexBody(email, folder, currentValidity, messageUid, dto.getBody());
+            return dto;
+
+        } catch (NoSuchFileException e) {
+            return mailReceiveService.getEmail(email, password, folder, uid, uidValidity);
+        } catch (IOException | MessagingException e) {
+            log.error("Failed to read email {} from Maildir: {}", uid, e.getMessage(), e);
+            throw new MailException("Failed to fetch email: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getUnreadCount(String email, String password) {
+        int counted = maildirCounterService.getUnreadCount(email, "INBOX");
+        if (counted >= 0) {
+            return counted;
+        }
+
+        Path dir = requireFolder(email, "INBOX");
+        try {
+            int unread = 0;
+            for (MaildirFile file : listFiles(dir).values()) {
+                if (!file.seen) {
+                    unread++;
+                }
+            }
+            return unread;
+        } catch (IOException e) {
+            log.error("Failed to count unread in Maildir of {}: {}", email, e.getMessage());
+            return 0;
+        }
+    }
+
+    private Path requireFolder(String email, String folder) {
+        Path maildir = maildir(email);
+        if (maildir == null) {
+            throw new MailException("Mailbox not available locally: " + email);
+        }
+        return Maildir.folderDir(maildir, folder);
+    }
+
+    private Path maildir(String email) {
+        return maildirLocator.find(email);
+    }
+
+    /**
+     * Parsed dovecot-uidlist, re-read only when the file changes
+     */
+    private Maildir.UidList uidList(Path dir) throws IOException {
+        Path file = dir.resolve(Maildir.UIDLIST);
+        FileTime modified = Files.getLastModifiedTime(file);
+        long size = Files.size(file);
+
+        CachedUidList cached = uidLists.get(dir);
+        if (cached != null && cached.modified.equals(modified) && cached.size == size) {
+            return cached.uidList;
+        }
+
+        Maildir.UidList uidList = Maildir.readUidList(dir);
+        if (uidList == null) {
+            throw new MailException("Maildir is not indexed: " + dir);
+        }
+        uidLists.put(dir, new CachedUidList(modified, size, uidList));
+        return uidList;
+    }
+
+    /**
+     * All messages of the folder by base name (one readdir of new/ and cur/)
+     */
+    private Map<String, MaildirFile> listFiles(Path dir) throws IOException {
+        Map<String, MaildirFile> files = new HashMap<>();
+        list(dir.resolve("new"), true, files);
+        list(dir.resolve("cur"), false, files);
+        return files;
+    }
+
+    private void list(Path subdir, boolean inNew, Map<String, MaildirFile> out) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(subdir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                out.put(Maildir.baseName(name), new MaildirFile(path, Maildir.isSeen(name, inNew), Maildir.isFlagged(name)));
+            }
+        }
+    }
+
+    private MaildirFile findFile(Path dir, String baseName) throws IOException {
+        Path inNew = dir.resolve("new").resolve(baseName);
+        if (Files.exists(inNew)) {
+            return new MaildirFile(inNew, false, false);
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.resolve("cur"),
+                p -> p.getFileName().toString().startsWith(baseName))) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (Maildir.baseName(name).equals(baseName)) {
+                    return new MaildirFile(path, Maildir.isSeen(name, false), Maildir.isFlagged(name));
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean hasUnassigned(Map<String, MaildirFile> files, Maildir.UidList uidList) {
+        for (String baseName : files.keySet()) {
+            if (uidList.uid(baseName) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private EmailDTO readSummary(MaildirFile file, long uid, long uidValidity) throws MessagingException, IOException {
+        try {
+            EmailDTO dto = read(file, message -> {
+                EmailDTO summary = MessageConverter.toSummary(message, uid, uidValidity);
+                summary.setPreview(MessageConverter.preview(message));
+                return summary;
+            });
+            applyFileInfo(dto, file);
+            return dto;
+        } catch (NoSuchFileException e) {
+            // Expunged (or flags changed) since the directory was listed
+            return null;
+        }
+    }
+
+    /**
+     * Parse a message from a read-only memory mapping of its file and hand
+     * it to the reader. Files too large to map are read through a file
+     * stream that stays open only until the reader returns.
+     */
+    private <T> T read(MaildirFile file, MessageReader<T> reader) throws IOException, MessagingException {
+        try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                try (SharedFileInputStream in = new SharedFileInputStream(file.path.toFile())) {
+                    return reader.read(withFlags(new MimeMessage(PARSE_SESSION, in), file));
+                }
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return reader.read(withFlags(new MimeMessage(PARSE_SESSION, new MappedMessageStream(mapped)), file));
+        }
+    }
+
+    private static MimeMessage withFlags(MimeMessage message, MaildirFile file) throws MessagingException {
+        message.setFlag(Flags.Flag.SEEN, file.seen);
+        message.setFlag(Flags.Flag.FLAGGED, file.flagged);
+        return message;
+    }
+
+    /**
+     * Size and arrival time come from the file, not the parsed message
+     */
+    private void applyFileInfo(EmailDTO dto, MaildirFile file) throws IOException {
+        long size = Files.size(file.path);
+        dto.setSize((int) Math.min(size, Integer.MAX_VALUE));
+
+        long delivered = Maildir.deliveredAt(file.path.getFileName().toString());
+        dto.setReceivedDate(new Date(delivered > 0 ? delivered : Files.getLastModifiedTime(file.path).toMillis()));
+    }
+
+    private interface MessageReader<T> {
+        T read(MimeMessage message) throws IOException, MessagingException;
+    }
+
+    private record MaildirFile(Path path, boolean seen, boolean flagged) {
+    }
+
+    private record CachedUidList(FileTime modified, long size, Maildir.UidList uidList) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.btctech.mailapp.service;
+
+import jakarta.mail.internet.SharedInputStream;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream over a (memory-mapped) buffer that MimeMessage can share.
+ * Body parts become slices of the same mapping instead of byte[] copies,
+ * so parsing a message only materializes the parts that are actually read.
+ */
+final class MappedMessageStream extends InputStream implements SharedInputStream {
+
+    private final ByteBuffer base;
+    private final ByteBuffer buffer;
+
+    MappedMessageStream(ByteBuffer mapped) {
+        this.base = mapped.slice();
+        this.buffer = base.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.reset();
+    }
+
+    @Override
+    public long getPosition() {
+        return buffer.position();
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        ByteBuffer part = base.duplicate();
+        part.limit(end < 0 ? base.limit() : (int) end);
+        part.position((int) start);
+        return new MappedMessageStream(part);
+    }
+}
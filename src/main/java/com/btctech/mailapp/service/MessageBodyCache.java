@@ -0,0 +1,317 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.AttachmentDTO;
+import com.btctech.mailapp.dto.EmailDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache of parsed message bodies.
+ * Headers, bodies and attachment metadata are immutable for a given
+ * (account, folder, UIDVALIDITY, UID); flags are not, so they are never
+ * stored - callers read them from the mailbox on every fetch and set them on
+ * the returned copy. Entries are evicted (least recently used first) when the
+ * cache goes over its byte budget. Evicted entries can optionally spill to a
+ * bounded on-disk tier.
+ */
+@Slf4j
+@Service
+public class MessageBodyCache {
+
+    /** Rough per-entry overhead (map node, DTO, dates, list) */
+    private static final long ENTRY_OVERHEAD = 512;
+
+    /** Disk tier files are named body-<sha256>.json; nothing else in the directory is touched */
+    private static final String FILE_PREFIX = "body-";
+    private static final String FILE_SUFFIX = ".json";
+
+    @Value("${mail.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mail.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${mail.cache.disk.enabled:false}")
+    private boolean diskEnabled;
+
+    @Value("${mail.cache.disk.path:./cache/bodies}")
+    private String diskPath;
+
+    @Value("${mail.cache.disk.max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long lastLoggedRequests;
+
+    private Path diskDir;
+
+    @PostConstruct
+    void init() {
+        if (enabled && diskEnabled) {
+            try {
+                diskDir = Paths.get(diskPath);
+                Files.createDirectories(diskDir);
+                // The disk index lives in memory, so files from a previous run are unreachable
+                try (Stream<Path> files = Files.list(diskDir)) {
+                    files.filter(MessageBodyCache::isCacheFile).forEach(f -> f.toFile().delete());
+                }
+            } catch (IOException e) {
+                log.warn("Disk body cache disabled, cannot use {}: {}", diskPath, e.getMessage());
+                diskDir = null;
+            }
+        }
+
+        log.info("Message body cache: enabled={}, maxBytes={}, disk={}",
+                enabled, maxBytes, diskDir != null ? diskDir.toAbsolutePath() : "off");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cached body for the message, or null. Returns a copy without flags
+     * (isRead is false); the caller sets the current ones.
+     */
+    public EmailDTO get(String email, String folder, long uidValidity, long uid) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = key(email, folder, uidValidity, uid);
+
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return copy(entry.email);
+            }
+        }
+
+        EmailDTO fromDisk = readDisk(key);
+        if (fromDisk != null) {
+            diskHits.incrementAndGet();
+            put(key, fromDisk);
+            return copy(fromDisk);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String email, String folder, long uidValidity, long uid, EmailDTO dto) {
+        if (!enabled) {
+            return;
+        }
+        EmailDTO body = copy(dto);
+        body.setRead(false);
+        put(key(email, folder, uidValidity, uid), body);
+    }
+
+    /**
+     * Drop cached bodies of messages that left the folder
+     */
+    public void remove(String email, String folder, long uidValidity, Collection<Long> uids) {
+        if (!enabled) {
+            return;
+        }
+
+        for (long uid : uids) {
+            String key = key(email, folder, uidValidity, uid);
+            boolean onDisk;
+            synchronized (this) {
+                Entry entry = memory.remove(key);
+                if (entry != null) {
+                    memoryBytes -= entry.weight;
+                }
+                onDisk = disk.containsKey(key);
+            }
+            if (onDisk) {
+                removeDisk(key);
+            }
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        synchronized (this) {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", hits.get());
+            stats.put("diskHits", diskHits.get());
+            stats.put("misses", misses.get());
+            stats.put("evictions", evictions.get());
+            stats.put("entries", (long) memory.size());
+            stats.put("bytes", memoryBytes);
+            stats.put("diskEntries", (long) disk.size());
+            stats.put("diskBytes", diskBytes);
+            return stats;
+        }
+    }
+
+    /**
+     * Periodically log hit ratio (only when there was traffic)
+     */
+    @Scheduled(fixedDelayString = "${mail.cache.stats-interval-ms:300000}")
+    public void logStats() {
+        long requests = hits.get() + diskHits.get() + misses.get();
+        if (!enabled || requests == lastLoggedRequests) {
+            return;
+        }
+        lastLoggedRequests = requests;
+
+        long served = hits.get() + diskHits.get();
+        log.info("Message body cache: {}% hit ratio, stats={}", served * 100 / requests, getStats());
+    }
+
+    private void put(String key, EmailDTO dto) {
+        long weight = weigh(dto);
+        if (weight > maxBytes) {
+            return;
+        }
+
+        Map<String, EmailDTO> spilled = new LinkedHashMap<>();
+
+        synchronized (this) {
+            Entry previous = memory.put(key, new Entry(dto, weight));
+            if (previous != null) {
+                memoryBytes -= previous.weight;
+            }
+            memoryBytes += weight;
+
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                memoryBytes -= eldest.getValue().weight;
+                evictions.incrementAndGet();
+                spilled.put(eldest.getKey(), eldest.getValue().email);
+            }
+        }
+
+        // Disk writes happen outside the lock
+        spilled.forEach(this::writeDisk);
+    }
+
+    private EmailDTO readDisk(String key) {
+        if (diskDir == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (!disk.containsKey(key)) {
+                return null;
+            }
+        }
+
+        try {
+            return objectMapper.readValue(file(key).toFile(), EmailDTO.class);
+        } catch (IOException e) {
+            log.debug("Disk body cache read failed: {}", e.getMessage());
+            removeDisk(key);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, EmailDTO dto) {
+        if (diskDir == null) {
+            return;
+        }
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(dto);
+            if (json.length > diskMaxBytes) {
+                return;
+            }
+            Files.write(file(key), json);
+
+            synchronized (this) {
+                Long previous = disk.put(key, (long) json.length);
+                diskBytes += json.length - (previous != null ? previous : 0);
+
+                Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+                while (diskBytes > diskMaxBytes && it.hasNext()) {
+                    Map.Entry<String, Long> eldest = it.next();
+                    it.remove();
+                    diskBytes -= eldest.getValue();
+                    file(eldest.getKey()).toFile().delete();
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Disk body cache write failed: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void removeDisk(String key) {
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        file(key).toFile().delete();
+    }
+
+    private Path file(String key) {
+        return diskDir.resolve(FILE_PREFIX + Hashes.sha256Hex(key) + FILE_SUFFIX);
+    }
+
+    private static boolean isCacheFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && Files.isRegularFile(path);
+    }
+
+    /**
+     * Approximate heap footprint of a parsed message (strings count two bytes per char)
+     */
+    private static long weigh(EmailDTO dto) {
+        long chars = length(dto.getBody()) + length(dto.getHtmlBody()) + length(dto.getSubject())
+                + length(dto.getFrom()) + length(dto.getTo()) + length(dto.getMessageId());
+        if (dto.getAttachments() != null) {
+            for (AttachmentDTO attachment : dto.getAttachments()) {
+                chars += length(attachment.getFilename()) + length(attachment.getContentType()) + 64;
+            }
+        }
+        return ENTRY_OVERHEAD + chars * 2;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static EmailDTO copy(EmailDTO dto) {
+        return dto.toBuilder()
+                .attachments(dto.getAttachments() != null ? new ArrayList<>(dto.getAttachments()) : null)
+                .build();
+    }
+
+    private static String key(String email, String folder, long uidValidity, long uid) {
+        return email.toLowerCase() + '\u0000' + folder + '\u0000' + uidValidity + '\u0000' + uid;
+    }
+
+    private record Entry(EmailDTO email, long weight) {
+    }
+}
@@ -0,0 +1,220 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.AttachmentDTO;
+import com.btctech.mailapp.dto.EmailDTO;
+import jakarta.mail.Address;
+import jakarta.mail.BodyPart;
+import jakarta.mail.Flags;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.ParseException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Converts a parsed message into an EmailDTO.
+ * Shared by the IMAP and Maildir read paths, which differ only in where the
+ * UID/UIDVALIDITY come from.
+ */
+public final class MessageConverter {
+
+    /**
+     * Length of the text snippet shown in list views
+     */
+    public static final int PREVIEW_LENGTH = 200;
+
+    private MessageConverter() {
+    }
+
+    /**
+     * Convert Message to EmailDTO including bodies
+     */
+    public static EmailDTO toEmail(Message message, long uid, long uidValidity)
+            throws MessagingException, IOException {
+        EmailDTO dto = toSummary(message, uid, uidValidity);
+
+        // Body
+        String[] content = extractContent(message);
+        dto.setBody(content[0]); // Plain text
+        dto.setHtmlBody(content[1]); // HTML
+        dto.setPreview(preview(content[0]));
+
+        return dto;
+    }
+
+    /**
+     * Convert Message to EmailDTO from envelope, flags and structure only.
+     * Never touches the message body.
+     */
+    public static EmailDTO toSummary(Message message, long uid, long uidValidity)
+            throws MessagingException, IOException {
+        EmailDTO dto = new EmailDTO();
+
+        // UID + UIDVALIDITY (stable identity, unlike the message number)
+        dto.setUid(String.valueOf(uid));
+        dto.setUidValidity(uidValidity);
+
+        // From
+        Address[] fromAddresses = message.getFrom();
+        if (fromAddresses != null && fromAddresses.length > 0) {
+            dto.setFrom(((InternetAddress) fromAddresses[0]).getAddress());
+        }
+
+        // To
+        Address[] toAddresses = message.getRecipients(Message.RecipientType.TO);
+        if (toAddresses != null && toAddresses.length > 0) {
+            dto.setTo(((InternetAddress) toAddresses[0]).getAddress());
+        }
+
+        if (message instanceof MimeMessage) {
+            dto.setMessageId(((MimeMessage) message).getMessageID());
+        }
+
+        // Subject
+        dto.setSubject(message.getSubject());
+
+        // Dates
+        dto.setSentDate(message.getSentDate());
+        dto.setReceivedDate(message.getReceivedDate());
+
+        // Read status
+        dto.setRead(message.isSet(Flags.Flag.SEEN));
+
+        // Size
+        dto.setSize(message.getSize());
+
+        // Attachments (answered from BODYSTRUCTURE)
+        List<AttachmentDTO> attachments = MimeParts.collectAttachments(message);
+        dto.setAttachments(attachments);
+        dto.setHasAttachments(!attachments.isEmpty());
+
+        return dto;
+    }
+
+    /**
+     * Plain text of the message (HTML converted when there is no text part).
+     * For IMAP messages only the text parts are fetched, never attachments.
+     */
+    public static String extractText(Message message) throws MessagingException, IOException {
+        return extractContent(message)[0];
+    }
+
+    /**
+     * List-view snippet of already extracted plain text
+     */
+    public static String preview(String text) {
+        return HtmlText.preview(text, PREVIEW_LENGTH);
+    }
+
+    /**
+     * List-view snippet read straight from the first text part (plain text
+     * preferred). The part is decoded as a stream and reading stops once the
+     * snippet is complete, so a large HTML body is never loaded whole.
+     */
+    public static String preview(Part message) throws MessagingException, IOException {
+        Part text = findText(message, "text/plain");
+        if (text == null) {
+            text = findText(message, "text/html");
+        }
+        if (text == null) {
+            return "";
+        }
+
+        try (Reader reader = new InputStreamReader(text.getInputStream(), charset(text))) {
+            return HtmlText.preview(reader, text.isMimeType("text/html"), PREVIEW_LENGTH);
+        }
+    }
+
+    /**
+     * First inline part of the given type, depth first
+     */
+    private static Part findText(Part part, String mimeType) throws MessagingException, IOException {
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return null;
+        }
+        if (part.isMimeType(mimeType)) {
+            return part;
+        }
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                Part found = findText(multipart.getBodyPart(i), mimeType);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Charset charset(Part part) throws MessagingException {
+        try {
+            String charset = new ContentType(part.getContentType()).getParameter("charset");
+            if (charset != null) {
+                return Charset.forName(MimeUtility.javaCharset(charset));
+            }
+        } catch (ParseException | IllegalArgumentException e) {
+            // Malformed header or unknown charset - fall back below
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Extract email content (text and HTML)
+     */
+    private static String[] extractContent(Message message) throws MessagingException, IOException {
+        String plainText = "";
+        String html = "";
+
+        Object content = message.getContent();
+
+        if (content instanceof String) {
+            plainText = (String) content;
+        } else if (content instanceof Multipart) {
+            Multipart multipart = (Multipart) content;
+
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart bodyPart = multipart.getBodyPart(i);
+
+                if (Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition())) {
+                    continue; // a text file attached is not the body
+                }
+                if (bodyPart.isMimeType("text/plain")) {
+                    plainText = (String) bodyPart.getContent();
+                } else if (bodyPart.isMimeType("text/html")) {
+                    html = (String) bodyPart.getContent();
+                } else if (bodyPart.isMimeType("multipart/*")) {
+                    // Nested multipart
+                    MimeMultipart nested = (MimeMultipart) bodyPart.getContent();
+                    for (int j = 0; j < nested.getCount(); j++) {
+                        BodyPart nestedPart = nested.getBodyPart(j);
+                        if (nestedPart.isMimeType("text/plain")) {
+                            plainText = (String) nestedPart.getContent();
+                        } else if (nestedPart.isMimeType("text/html")) {
+                            html = (String) nestedPart.getContent();
+                        }
+                    }
+                }
+            }
+        }
+
+        // If no plain text but has HTML, convert HTML to plain text
+        if (plainText.isEmpty() && !html.isEmpty()) {
+            plainText = HtmlText.toText(html);
+        }
+
+        return new String[]{plainText, html};
+    }
+}
@@ -0,0 +1,131 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.AttachmentDTO;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeUtility;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for walking a message's MIME tree.
+ * Part ids follow IMAP section numbering ("1", "2.1", ...), so they can be
+ * used directly in BODY[section] fetches.
+ */
+public final class MimeParts {
+
+    private MimeParts() {
+    }
+
+    /**
+     * Collect attachment descriptors. For IMAP messages this only reads the
+     * BODYSTRUCTURE - no part content is downloaded.
+     */
+    public static List<AttachmentDTO> collectAttachments(Part message) throws MessagingException, IOException {
+        List<AttachmentDTO> attachments = new ArrayList<>();
+        if (message.isMimeType("multipart/*")) {
+            walk((Multipart) message.getContent(), "", attachments);
+        } else if (isAttachment(message)) {
+            attachments.add(toAttachment(message, "1"));
+        }
+        return attachments;
+    }
+
+    /**
+     * Resolve a part by its section id, or null if there is no such part
+     */
+    public static Part findPart(Part message, String partId) throws MessagingException, IOException {
+        String[] indexes = partId.split("\\.");
+        Part current = message;
+        boolean isMessage = true;
+        for (int n = 0; n < indexes.length; n++) {
+            int i;
+            try {
+                i = Integer.parseInt(indexes[n]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (!isMessage && current.isMimeType("message/rfc822")) {
+                // Sections below an attached message number the parts of that message
+                current = (Part) current.getContent();
+                isMessage = true;
+            }
+
+            if (!current.isMimeType("multipart/*")) {
+                // Single-part message: section 1 is the body itself, which has no subparts
+                return i == 1 && isMessage && n == indexes.length - 1 ? current : null;
+            }
+
+            Multipart multipart = (Multipart) current.getContent();
+            if (i < 1 || i > multipart.getCount()) {
+                return null;
+            }
+            current = multipart.getBodyPart(i - 1);
+            isMessage = false;
+        }
+        return current;
+    }
+
+    public static boolean isAttachment(Part part) throws MessagingException {
+        String disposition = part.getDisposition();
+        if (Part.ATTACHMENT.equalsIgnoreCase(disposition)) {
+            return true;
+        }
+        return part.getFileName() != null && !Part.INLINE.equalsIgnoreCase(disposition);
+    }
+
+    public static String fileName(Part part) throws MessagingException {
+        String name = part.getFileName();
+        if (name == null) {
+            return "attachment";
+        }
+        try {
+            return MimeUtility.decodeText(name);
+        } catch (UnsupportedEncodingException e) {
+            return name;
+        }
+    }
+
+    private static void walk(Multipart multipart, String prefix, List<AttachmentDTO> out)
+            throws MessagingException, IOException {
+        for (int i = 0; i < multipart.getCount(); i++) {
+            Part part = multipart.getBodyPart(i);
+            String partId = prefix + (i + 1);
+
+            if (part.isMimeType("multipart/*")) {
+                walk((Multipart) part.getContent(), partId + ".", out);
+            } else if (isAttachment(part)) {
+                out.add(toAttachment(part, partId));
+            }
+        }
+    }
+
+    /**
+     * Describe a single part (used for download headers)
+     */
+    public static AttachmentDTO describe(Part part, String partId) throws MessagingException {
+        return toAttachment(part, partId);
+    }
+
+    private static AttachmentDTO toAttachment(Part part, String partId) throws MessagingException {
+        String contentType;
+        try {
+            contentType = new ContentType(part.getContentType()).getBaseType();
+        } catch (Exception e) {
+            contentType = "application/octet-stream";
+        }
+
+        return AttachmentDTO.builder()
+                .partId(partId)
+                .filename(fileName(part))
+                .contentType(contentType)
+                .size(Math.max(part.getSize(), 0))
+                .build();
+    }
+}
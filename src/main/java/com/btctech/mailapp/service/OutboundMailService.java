@@ -0,0 +1,609 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.BulkRecipientStatus;
+import com.btctech.mailapp.dto.BulkSendStatus;
+import com.btctech.mailapp.dto.OutboundMailDTO;
+import com.btctech.mailapp.entity.MailAccount;
+import com.btctech.mailapp.entity.OutboundMail;
+import com.btctech.mailapp.exception.MailException;
+import com.btctech.mailapp.repository.OutboundMailRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedFileInputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable outbound queue (outbound_mails table).
+ * A send only stores the finished message and returns its job id; delivery
+ * happens on the MailExecutor (so the per-account bulkheads apply) over the
+ * pooled SMTP connections. A temporary failure - Postfix slow, down or
+ * answering 4xx - is retried with exponential backoff up to max-attempts; a
+ * 5xx or an authentication failure fails the job at once.
+ *
+ * The poller drains backlogs (retries, bulk sends) with at most
+ * max-in-flight-per-account jobs of one sender at a time, and polls again as
+ * soon as one finishes, so a bulk send streams over the sender's pooled
+ * connections while interactive sends still start immediately.
+ *
+ * Jobs are claimed with a conditional UPDATE, so several instances can share
+ * the table. Delivery is at-least-once: a job left in SENDING by a crash is
+ * requeued after stale-after-ms, and the stored Message-ID lets receivers
+ * recognise the rare duplicate.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboundMailService {
+
+    // What Transport.send leaves out of the DATA as well
+    private static final String[] STRIPPED_HEADERS = {"Bcc", "Content-Length"};
+    private static final List<OutboundMail.Status> FINISHED = List.of(OutboundMail.Status.SENT, OutboundMail.Status.FAILED);
+    private static final List<OutboundMail.CopyStatus> COPYING = List.of(OutboundMail.CopyStatus.PENDING,
+            OutboundMail.CopyStatus.APPENDING);
+
+    private final OutboundMailRepository outboundMailRepository;
+    private final SmtpConnectionPool smtpConnectionPool;
+    private final SessionService sessionService;
+    private final MailExecutor mailExecutor;
+    private final MaildirDelivery maildirDelivery;
+
+    @Value("${mail.outbound.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mail.outbound.backoff-initial-ms:30000}")
+    private long backoffInitialMs;
+
+    @Value("${mail.outbound.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    @Value("${mail.outbound.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${mail.outbound.max-in-flight-per-account:2}")
+    private int maxInFlightPerAccount;
+
+    @Value("${mail.outbound.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    @Value("${mail.outbound.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${mail.outbound.spool-path:./data/outbound}")
+    private String spoolPath;
+
+    @Value("${mail.sent-copy.enabled:true}")
+    private boolean saveSentCopies;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private Path spoolDir;
+    private final Map<String, Integer> accountsInFlight = new ConcurrentHashMap<>();
+
+    // The last poll left due jobs behind
+    private volatile boolean backlog;
+
+    @PostConstruct
+    void init() throws IOException {
+        spoolDir = Paths.get(spoolPath);
+        Files.createDirectories(spoolDir);
+        log.info("Outbound queue: maxInFlight={}, perAccount={}, maxAttempts={}, spool={}",
+                maxInFlight, maxInFlightPerAccount, maxAttempts, spoolDir.toAbsolutePath());
+    }
+
+    /**
+     * Store a message for delivery from the account and start sending it
+     * right away. Returns as soon as the job is saved.
+     */
+    public OutboundMail enqueue(MailAccount account, String password, MimeMessage message) {
+        try {
+            OutboundMail job = toJob(account, sessionService.encrypt(password), null, message);
+            try {
+                job = outboundMailRepository.save(job);
+            } catch (RuntimeException e) {
+                deleteSpool(job);
+                throw e;
+            }
+
+            log.info("Queued outbound mail {} from {} to {} ({} bytes{})",
+                    job.getId(), job.getFromEmail(), job.getRecipients(), size(job),
+                    job.getSpoolPath() != null ? ", spooled" : "");
+
+            // An interactive send does not wait behind bulk backlogs for the poller
+            dispatch(job.getId(), job.getFromEmail());
+            return job;
+
+        } catch (MailException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to queue email from {}: {}", account.getEmail(), e.getMessage(), e);
+            throw new MailException("Failed to queue email: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Store messages of a bulk send under one batch id. Delivery is left to
+     * the poller, which keeps the sender within max-in-flight-per-account.
+     */
+    public void enqueueAll(MailAccount account, String password, String batchId, List<MimeMessage> messages) {
+        try {
+            String encryptedPassword = sessionService.encrypt(password);
+            List<OutboundMail> jobs = new ArrayList<>(messages.size());
+            for (MimeMessage message : messages) {
+                jobs.add(toJob(account, encryptedPassword, batchId, message));
+            }
+            outboundMailRepository.saveAll(jobs);
+
+            log.info("Queued {} outbound mails of batch {} from {}", jobs.size(), batchId, account.getEmail());
+
+        } catch (MailException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to queue batch {} from {}: {}", batchId, account.getEmail(), e.getMessage(), e);
+            throw new MailException("Failed to queue email: " + e.getMessage());
+        }
+    }
+
+    private OutboundMail toJob(MailAccount account, String encryptedPassword, String batchId,
+                               MimeMessage message) throws Exception {
+        message.saveChanges();
+        Address[] recipients = message.getAllRecipients();
+        if (recipients == null || recipients.length == 0) {
+            throw new MailException("Message has no recipients");
+        }
+
+        OutboundMail job = new OutboundMail();
+        if (message.isMimeType("multipart/*")) {
+            // Attachments are encoded straight from their source into the spool file
+            Path spool = spoolDir.resolve(UUID.randomUUID() + ".eml");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(spool))) {
+                message.writeTo(out, STRIPPED_HEADERS);
+            } catch (Exception e) {
+                Files.deleteIfExists(spool);
+                throw e;
+            }
+            job.setSpoolPath(spool.toString());
+        } else {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            message.writeTo(raw, STRIPPED_HEADERS);
+            job.setRawMessage(raw.toByteArray());
+        }
+
+        job.setMailAccountId(account.getId());
+        job.setFromEmail(account.getEmail());
+        job.setBatchId(batchId);
+        job.setRecipients(envelope(recipients));
+        job.setBcc(message.getHeader("Bcc", ", "));
+        job.setSubject(truncate(message.getSubject(), 500));
+        job.setMessageId(message.getMessageID());
+        job.setEncryptedPassword(encryptedPassword);
+        return job;
+    }
+
+    /**
+     * Status of one of the account's jobs
+     */
+    public OutboundMailDTO getStatus(String fromEmail, Long jobId) {
+        return outboundMailRepository.findByIdAndFromEmail(jobId, fromEmail)
+                .map(OutboundMailService::toDTO)
+                .orElseThrow(() -> new MailException("Outbound mail not found: " + jobId));
+    }
+
+    /**
+     * Progress of a bulk send, with one page of its recipients
+     */
+    public BulkSendStatus getBatchStatus(String fromEmail, String batchId, int page, int size) {
+        List<OutboundMailRepository.StatusCount> counts = outboundMailRepository.countByBatch(batchId, fromEmail);
+        if (counts.isEmpty()) {
+            throw new MailException("Bulk send not found: " + batchId);
+        }
+
+        Map<OutboundMail.Status, Long> byStatus = new EnumMap<>(OutboundMail.Status.class);
+        long total = 0;
+        for (OutboundMailRepository.StatusCount count : counts) {
+            byStatus.put(count.getStatus(), count.getCount());
+            total += count.getCount();
+        }
+
+        List<BulkRecipientStatus> recipients = new ArrayList<>();
+        for (OutboundMailRepository.BatchRow row
+                : outboundMailRepository.findBatchRows(batchId, fromEmail, PageRequest.of(page, size))) {
+            recipients.add(BulkRecipientStatus.builder()
+                    .jobId(row.getId())
+                    .to(row.getRecipients())
+                    .status(row.getStatus().name())
+                    .attempts(row.getAttempts())
+                    .lastError(row.getLastError())
+                    .sentAt(date(row.getSentAt()))
+                    .build());
+        }
+
+        long queued = byStatus.getOrDefault(OutboundMail.Status.QUEUED, 0L);
+        long sending = byStatus.getOrDefault(OutboundMail.Status.SENDING, 0L);
+        return BulkSendStatus.builder()
+                .batchId(batchId)
+                .total(total)
+                .queued(queued)
+                .sending(sending)
+                .sent(byStatus.getOrDefault(OutboundMail.Status.SENT, 0L))
+                .failed(byStatus.getOrDefault(OutboundMail.Status.FAILED, 0L))
+                .finished(queued == 0 && sending == 0)
+                .recipients(recipients)
+                .hasMore((long) (page + 1) * size < total)
+                .build();
+    }
+
+    /**
+     * Hand due jobs to the workers, up to max-in-flight overall and
+     * max-in-flight-per-account per sender. Also run whenever a delivery
+     * finishes while a backlog is known, so a bulk send keeps its
+     * connections busy instead of waiting for the next tick.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbound.poll-interval-ms:5000}")
+    public synchronized void poll() {
+        int room = maxInFlight - inFlight.get();
+        if (room <= 0) {
+            backlog = true;
+            return;
+        }
+
+        // Senders at their limit are left out, so one bulk send cannot fill the page
+        Set<String> busy = new HashSet<>();
+        accountsInFlight.forEach((email, count) -> {
+            if (count >= maxInFlightPerAccount) {
+                busy.add(email);
+            }
+        });
+        boolean excluded = !busy.isEmpty();
+        if (!excluded) {
+            busy.add(""); // NOT IN () is not valid SQL
+        }
+
+        List<OutboundMailRepository.DueMail> due = outboundMailRepository.findDue(
+                OutboundMail.Status.QUEUED, LocalDateTime.now(), busy, PageRequest.of(0, room));
+
+        boolean skipped = false;
+        for (OutboundMailRepository.DueMail mail : due) {
+            if (accountsInFlight.getOrDefault(mail.getFromEmail(), 0) >= maxInFlightPerAccount) {
+                skipped = true;
+                continue;
+            }
+            dispatch(mail.getId(), mail.getFromEmail());
+        }
+        // Senders left out may have more due; their next completion polls again
+        backlog = excluded || skipped || due.size() == room;
+    }
+
+    /**
+     * Requeue jobs orphaned in SENDING and drop finished ones past retention
+     */
+    @Scheduled(fixedDelayString = "${mail.outbound.maintenance-interval-ms:300000}")
+    public void maintenance() {
+        LocalDateTime now = LocalDateTime.now();
+
+        int requeued = outboundMailRepository.requeueStale(OutboundMail.Status.SENDING, OutboundMail.Status.QUEUED,
+                now.minus(staleAfterMs, ChronoUnit.MILLIS), now);
+        if (requeued > 0) {
+            log.warn("Requeued {} outbound mails left in SENDING", requeued);
+        }
+
+        int deleted = outboundMailRepository.deleteFinishedBefore(FINISHED, COPYING, now.minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Deleted {} finished outbound mails older than {} days", deleted, retentionDays);
+        }
+    }
+
+    private void dispatch(Long id, String fromEmail) {
+        if (outboundMailRepository.claim(id, OutboundMail.Status.QUEUED, OutboundMail.Status.SENDING,
+                LocalDateTime.now()) == 0) {
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        accountsInFlight.merge(fromEmail, 1, Integer::sum);
+
+        mailExecutor.<Void>submit(fromEmail, () -> {
+            deliver(id);
+            return null;
+        }, e -> {
+            requeue(id, MailExecutor.unwrap(e));
+            return null;
+        }).whenComplete((result, e) -> {
+            inFlight.decrementAndGet();
+            accountsInFlight.computeIfPresent(fromEmail, (k, count) -> count > 1 ? count - 1 : null);
+            if (backlog) {
+                refill();
+            }
+        });
+    }
+
+    void refill() {
+        try {
+            poll();
+        } catch (Exception e) {
+            // The scheduled poll tries again
+            log.error("Outbound queue poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * One delivery attempt of a claimed job
+     */
+    private void deliver(Long id) {
+        OutboundMail job = outboundMailRepository.findById(id).orElse(null);
+        if (job == null || job.getStatus() != OutboundMail.Status.SENDING) {
+            return;
+        }
+
+        job.setAttempts(job.getAttempts() + 1);
+        try {
+            Address[] recipients = InternetAddress.parse(job.getRecipients());
+
+            // Mail between mailboxes of this host skips the SMTP round trip
+            Map<InternetAddress, Path> local = maildirDelivery.resolve(recipients);
+            if (local != null) {
+                try (InputStream in = open(job)) {
+                    maildirDelivery.deliver(job.getFromEmail(), local, in);
+                }
+            } else {
+                String password = sessionService.decrypt(job.getEncryptedPassword());
+
+                // A spooled message is parsed over the file, its parts are streamed from there
+                try (InputStream in = open(job)) {
+                    MimeMessage message = new MimeMessage(smtpConnectionPool.getSession(), in);
+                    smtpConnectionPool.send(job.getFromEmail(), password, message, recipients);
+                }
+            }
+
+            finish(job, OutboundMail.Status.SENT, null);
+            log.info("✓ Outbound mail {} {} from {} to {} (attempt {})", id, local != null ? "delivered locally" : "sent",
+                    job.getFromEmail(), job.getRecipients(), job.getAttempts());
+
+        } catch (Exception e) {
+            Address[] delivered = e instanceof SendFailedException sendFailed ? sendFailed.getValidSentAddresses() : null;
+            if (delivered != null && delivered.length > 0) {
+                // Never resend to the recipients that already have it; the rest retry (4xx) or fail (5xx)
+                SendFailedException sendFailed = (SendFailedException) e;
+                job.setRecipients(envelope(unsent(sendFailed)));
+                log.warn("Outbound mail {} sent to {} only, still to {}: {}",
+                        id, envelope(delivered), job.getRecipients(), e.getMessage());
+            }
+            fail(job, e);
+        }
+        outboundMailRepository.save(job);
+    }
+
+    static InputStream open(OutboundMail job) throws IOException {
+        return job.getSpoolPath() != null
+                ? new SharedFileInputStream(job.getSpoolPath())
+                : new ByteArrayInputStream(job.getRawMessage());
+    }
+
+    /**
+     * Schedule the next attempt, or give up on permanent errors and after max-attempts
+     */
+    private void fail(OutboundMail job, Exception e) {
+        String error = describe(e);
+
+        if (isPermanent(e) || job.getAttempts() >= maxAttempts) {
+            finish(job, OutboundMail.Status.FAILED, error);
+            log.error("Outbound mail {} from {} failed after {} attempts: {}",
+                    job.getId(), job.getFromEmail(), job.getAttempts(), error);
+            return;
+        }
+
+        long delay = backoff(job.getAttempts());
+        job.setStatus(OutboundMail.Status.QUEUED);
+        job.setNextAttemptAt(LocalDateTime.now().plus(delay, ChronoUnit.MILLIS));
+        job.setLastError(truncate(error, 1000));
+        log.warn("Outbound mail {} from {} attempt {} failed, retrying in {}s: {}",
+                job.getId(), job.getFromEmail(), job.getAttempts(), delay / 1000, error);
+    }
+
+    private void finish(OutboundMail job, OutboundMail.Status status, String error) {
+        job.setStatus(status);
+        job.setLastError(truncate(error, 1000));
+        if (status == OutboundMail.Status.SENT) {
+            job.setSentAt(LocalDateTime.now());
+            if (saveSentCopies) {
+                // SentFolderService appends the stored message and then releases it
+                job.setCopyStatus(OutboundMail.CopyStatus.PENDING);
+                job.setNextAttemptAt(LocalDateTime.now());
+                return;
+            }
+        }
+        release(job);
+    }
+
+    /**
+     * Nothing left to send - do not keep the password or the message around
+     */
+    static void release(OutboundMail job) {
+        job.setEncryptedPassword(null);
+        job.setRawMessage(null);
+        deleteSpool(job);
+        job.setSpoolPath(null);
+    }
+
+    private static void deleteSpool(OutboundMail job) {
+        if (job.getSpoolPath() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(job.getSpoolPath()));
+        } catch (IOException e) {
+            log.warn("Could not delete spool file {}: {}", job.getSpoolPath(), e.getMessage());
+        }
+    }
+
+    static long size(OutboundMail job) {
+        if (job.getRawMessage() != null) {
+            return job.getRawMessage().length;
+        }
+        try {
+            return Files.size(Paths.get(job.getSpoolPath()));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The executor would not take the job (mailbox or server saturated):
+     * back to the queue without counting an attempt
+     */
+    private void requeue(Long id, Throwable cause) {
+        try {
+            outboundMailRepository.findById(id).ifPresent(job -> {
+                if (job.getStatus() == OutboundMail.Status.SENDING) {
+                    job.setStatus(OutboundMail.Status.QUEUED);
+                    job.setNextAttemptAt(LocalDateTime.now().plus(backoffInitialMs, ChronoUnit.MILLIS));
+                    outboundMailRepository.save(job);
+                }
+            });
+            log.warn("Outbound mail {} requeued: {}", id, cause.getMessage());
+        } catch (Exception e) {
+            // Left in SENDING; maintenance() requeues it after stale-after-ms
+            log.error("Failed to requeue outbound mail {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * initial * 2^(attempt - 1), capped, with +/-20% jitter so a Postfix
+     * outage does not end in every job retrying in the same second
+     */
+    private long backoff(int attempt) {
+        return backoff(backoffInitialMs, backoffMaxMs, attempt);
+    }
+
+    static long backoff(long initialMs, long maxMs, int attempt) {
+        long delay = initialMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, maxMs);
+        return (long) (delay * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    /**
+     * Errors a retry cannot fix: rejected credentials, a broken stored job,
+     * and SMTP replies that are all 5xx
+     */
+    static boolean isPermanent(Exception e) {
+        if (e instanceof AuthenticationFailedException || e instanceof GeneralSecurityException) {
+            return true;
+        }
+        if (!(e instanceof SendFailedException)) {
+            return false;
+        }
+
+        boolean permanent = false;
+        Exception next = e;
+        while (next != null) {
+            int code = next instanceof SMTPSendFailedException sendFailed ? sendFailed.getReturnCode()
+                    : next instanceof SMTPAddressFailedException addressFailed ? addressFailed.getReturnCode()
+                    : -1;
+            if (code >= 400 && code < 500) {
+                return false;
+            }
+            if (code >= 500) {
+                permanent = true;
+            }
+            next = next instanceof MessagingException messaging ? messaging.getNextException() : null;
+        }
+        return permanent;
+    }
+
+    /**
+     * Error text including the server's reply ("Invalid Addresses" alone says little)
+     */
+    private static String describe(Exception e) {
+        String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        if (e instanceof MessagingException messaging && messaging.getNextException() != null
+                && messaging.getNextException().getMessage() != null) {
+            error += ": " + messaging.getNextException().getMessage().trim();
+        }
+        return error;
+    }
+
+    static OutboundMailDTO toDTO(OutboundMail job) {
+        return OutboundMailDTO.builder()
+                .jobId(job.getId())
+                .status(job.getStatus().name())
+                .from(job.getFromEmail())
+                .recipients(job.getRecipients())
+                .subject(job.getSubject())
+                .messageId(job.getMessageId())
+                .attempts(job.getAttempts())
+                .nextAttemptAt(job.getStatus() == OutboundMail.Status.QUEUED ? date(job.getNextAttemptAt()) : null)
+                .lastError(job.getLastError())
+                .createdAt(date(job.getCreatedAt()))
+                .sentAt(date(job.getSentAt()))
+                .sentCopy(job.getCopyStatus() != null ? job.getCopyStatus().name() : null)
+                .build();
+    }
+
+    /**
+     * Recipients a partly failed send did not reach: accepted but unsent, and rejected
+     */
+    private static Address[] unsent(SendFailedException e) {
+        List<Address> unsent = new ArrayList<>();
+        if (e.getValidUnsentAddresses() != null) {
+            unsent.addAll(List.of(e.getValidUnsentAddresses()));
+        }
+        if (e.getInvalidAddresses() != null) {
+            unsent.addAll(List.of(e.getInvalidAddresses()));
+        }
+        return unsent.toArray(new Address[0]);
+    }
+
+    private static String envelope(Address[] addresses) {
+        StringBuilder sb = new StringBuilder();
+        for (Address address : addresses) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(address instanceof InternetAddress internet ? internet.getAddress() : address.toString());
+        }
+        return sb.toString();
+    }
+
+    private static Date date(LocalDateTime time) {
+        return time != null ? Date.from(time.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+}
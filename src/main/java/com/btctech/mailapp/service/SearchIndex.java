@@ -0,0 +1,418 @@
+package com.btctech.mailapp.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of one folder, documents addressed by IMAP UID.
+ * Posting lists are (UID delta, weighted term frequency) varint pairs in a
+ * byte array; new mail always has a higher UID, so arrivals are plain
+ * appends. Late additions for older UIDs (a body indexed when the message is
+ * first opened) wait in a small side map until the list is re-encoded.
+ * Expunged UIDs are tombstoned and dropped on compaction.
+ * Not thread-safe - MailSearchService synchronizes on the instance.
+ */
+final class SearchIndex {
+
+    private static final int MAGIC = 0x4D534958; // "MSIX"
+    private static final int VERSION = 1;
+
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 40;
+    private static final int MAX_PREFIX_EXPANSION = 64;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final long uidValidity;
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final Map<Long, Integer> docLengths = new HashMap<>();
+    private final Set<Long> bodyIndexed = new HashSet<>();
+    private final Set<Long> deleted = new HashSet<>();
+    private long totalLength;
+
+    SearchIndex(long uidValidity) {
+        this.uidValidity = uidValidity;
+    }
+
+    long getUidValidity() {
+        return uidValidity;
+    }
+
+    int size() {
+        return docLengths.size();
+    }
+
+    boolean contains(long uid) {
+        return docLengths.containsKey(uid);
+    }
+
+    boolean hasBody(long uid) {
+        return bodyIndexed.contains(uid);
+    }
+
+    /**
+     * Add weighted terms for a document (may be called again for the same UID
+     * to add more fields, e.g. the body)
+     */
+    void add(long uid, Map<String, Integer> frequencies, boolean body) {
+        deleted.remove(uid);
+
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), k -> new Postings()).add(uid, entry.getValue());
+            length += entry.getValue();
+        }
+
+        docLengths.merge(uid, length, Integer::sum);
+        totalLength += length;
+        if (body) {
+            bodyIndexed.add(uid);
+        }
+    }
+
+    void remove(Iterable<Long> uids) {
+        for (long uid : uids) {
+            Integer length = docLengths.remove(uid);
+            if (length != null) {
+                totalLength -= length;
+                deleted.add(uid);
+            }
+            bodyIndexed.remove(uid);
+        }
+
+        if (deleted.size() > 1024 && deleted.size() > docLengths.size() / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * Ranked (BM25) UIDs matching every query token; the last token also
+     * matches as a prefix. Ties go to the newer message.
+     */
+    List<Hit> search(List<String> tokens, boolean prefixLast) {
+        if (tokens.isEmpty() || docLengths.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        double avgLength = Math.max(1.0, (double) totalLength / docLengths.size());
+        Map<Long, Double> scores = null;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            Map<Long, Double> tokenScores = new HashMap<>();
+
+            Iterable<Map.Entry<String, Postings>> matches = prefixLast && i == tokens.size() - 1
+                    ? expand(token)
+                    : single(token);
+
+            for (Map.Entry<String, Postings> match : matches) {
+                Postings postings = match.getValue();
+                double idf = Math.log(1 + (docLengths.size() - postings.count + 0.5) / (postings.count + 0.5));
+
+                postings.forEach((uid, tf) -> {
+                    Integer length = docLengths.get(uid);
+                    if (length == null) {
+                        return; // expunged
+                    }
+                    double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                    tokenScores.merge(uid, idf * norm, Double::sum);
+                });
+            }
+
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                scores.keySet().retainAll(tokenScores.keySet());
+                for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                }
+            }
+
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        List<Hit> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            ranked.add(new Hit(entry.getKey(), entry.getValue()));
+        }
+        ranked.sort(Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparing(Comparator.comparingLong(Hit::uid).reversed()));
+        return ranked;
+    }
+
+    private Iterable<Map.Entry<String, Postings>> single(String token) {
+        Postings postings = terms.get(token);
+        return postings == null ? List.of() : List.of(Map.entry(token, postings));
+    }
+
+    private Iterable<Map.Entry<String, Postings>> expand(String prefix) {
+        List<Map.Entry<String, Postings>> matches = new ArrayList<>();
+        for (Map.Entry<String, Postings> entry : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet()) {
+            matches.add(entry);
+            if (matches.size() == MAX_PREFIX_EXPANSION) {
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Drop tombstoned UIDs from every posting list
+     */
+    void compact() {
+        terms.entrySet().removeIf(entry -> entry.getValue().rewrite(deleted) == 0);
+        deleted.clear();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        compact();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(uidValidity);
+
+        Long[] uids = docLengths.keySet().toArray(new Long[0]);
+        Arrays.sort(uids);
+        out.writeInt(uids.length);
+        long previous = 0;
+        for (long uid : uids) {
+            writeVarLong(out, uid - previous);
+            writeVarLong(out, docLengths.get(uid));
+            out.writeBoolean(bodyIndexed.contains(uid));
+            previous = uid;
+        }
+
+        out.writeInt(terms.size());
+        for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    static SearchIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported search index format");
+        }
+
+        SearchIndex index = new SearchIndex(in.readLong());
+
+        int docs = in.readInt();
+        long uid = 0;
+        for (int i = 0; i < docs; i++) {
+            uid += readVarLong(in);
+            int length = (int) readVarLong(in);
+            index.docLengths.put(uid, length);
+            index.totalLength += length;
+            if (in.readBoolean()) {
+                index.bodyIndexed.add(uid);
+            }
+        }
+
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            index.terms.put(term, Postings.read(in));
+        }
+        return index;
+    }
+
+    /**
+     * Add lower-cased word tokens of the text to the frequency map, each
+     * occurrence counting weight (so a subject hit outranks a body hit)
+     */
+    static void tokenize(String text, int weight, Map<String, Integer> frequencies) {
+        if (text == null) {
+            return;
+        }
+        for (String token : tokens(text)) {
+            frequencies.merge(token, weight, Integer::sum);
+        }
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN && length <= MAX_TOKEN) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Delta + varint encoded (uid, tf) pairs in ascending UID order
+     */
+    private static final class Postings {
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private long lastUid;
+        private TreeMap<Long, Integer> late;
+
+        void add(long uid, int tf) {
+            if (uid > lastUid) {
+                append(uid, tf);
+                return;
+            }
+            if (late == null) {
+                late = new TreeMap<>();
+            }
+            late.merge(uid, tf, Integer::sum);
+            if (late.size() > 64) {
+                rewrite(Set.of());
+            }
+        }
+
+        void forEach(UidConsumer consumer) {
+            if (late != null) {
+                rewrite(Set.of());
+            }
+            decode(consumer);
+        }
+
+        private void decode(UidConsumer consumer) {
+            int pos = 0;
+            long uid = 0;
+            while (pos < length) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                int tf = 0;
+                shift = 0;
+                do {
+                    b = data[pos++];
+                    tf |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                uid += delta;
+                consumer.accept(uid, tf);
+            }
+        }
+
+        /**
+         * Re-encode, merging late additions and dropping removed UIDs; returns the new count
+         */
+        int rewrite(Set<Long> removed) {
+            TreeMap<Long, Integer> merged = late != null ? late : new TreeMap<>();
+            late = null;
+
+            decode((uid, tf) -> merged.merge(uid, tf, Integer::sum));
+
+            data = new byte[Math.max(8, length)];
+            length = 0;
+            count = 0;
+            lastUid = 0;
+            for (Map.Entry<Long, Integer> entry : merged.entrySet()) {
+                if (!removed.contains(entry.getKey())) {
+                    append(entry.getKey(), entry.getValue());
+                }
+            }
+            return count;
+        }
+
+        private void append(long uid, int tf) {
+            ensure(20);
+            length = putVarLong(data, length, uid - lastUid);
+            length = putVarLong(data, length, tf);
+            lastUid = uid;
+            count++;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            if (late != null) {
+                rewrite(Set.of());
+            }
+            out.writeInt(count);
+            writeVarLong(out, lastUid);
+            out.writeInt(length);
+            out.write(data, 0, length);
+        }
+
+        static Postings read(DataInputStream in) throws IOException {
+            Postings postings = new Postings();
+            postings.count = in.readInt();
+            postings.lastUid = readVarLong(in);
+            postings.length = in.readInt();
+            postings.data = new byte[Math.max(8, postings.length)];
+            in.readFully(postings.data, 0, postings.length);
+            return postings;
+        }
+
+        private static int putVarLong(byte[] buffer, int pos, long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[pos++] = (byte) value;
+            return pos;
+        }
+    }
+
+    record Hit(long uid, double score) {
+    }
+
+    @FunctionalInterface
+    private interface UidConsumer {
+        void accept(long uid, int tf);
+    }
+}
@@ -0,0 +1,324 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.entity.OutboundMail;
+import com.btctech.mailapp.repository.OutboundMailRepository;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.Folder;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeUtility;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.iap.Argument;
+import org.eclipse.angus.mail.iap.BadCommandException;
+import org.eclipse.angus.mail.iap.CommandFailedException;
+import org.eclipse.angus.mail.iap.Literal;
+import org.eclipse.angus.mail.iap.ProtocolException;
+import org.eclipse.angus.mail.iap.Response;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.protocol.BASE64MailboxEncoder;
+import org.eclipse.angus.mail.imap.protocol.IMAPProtocol;
+import org.eclipse.angus.mail.imap.protocol.INTERNALDATE;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves a copy of every sent message to the sender's Sent folder, off the
+ * send path. A job that reaches SENT keeps its stored message with a PENDING
+ * copy; the flush collects the pending copies of each sender and appends
+ * them in one batch over a pooled IMAP connection - a single MULTIAPPEND
+ * (RFC 3502) where the server has it, one APPEND per message otherwise.
+ *
+ * Copies are claimed like the jobs themselves, so several instances can
+ * share the table. Saving is at-least-once: a failed batch is retried with
+ * backoff, and one left in APPENDING by a crash is requeued after
+ * stale-after-ms.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SentFolderService {
+
+    private static final String SEEN = "(\\Seen)";
+
+    private final OutboundMailRepository outboundMailRepository;
+    private final ImapConnectionPool connectionPool;
+    private final SessionService sessionService;
+    private final MailExecutor mailExecutor;
+
+    @Value("${mail.sent-copy.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mail.sent-copy.folder:Sent}")
+    private String folderName;
+
+    @Value("${mail.sent-copy.batch-size:50}")
+    private int batchSize;
+
+    @Value("${mail.sent-copy.batch-max-bytes:33554432}")
+    private long batchMaxBytes;
+
+    @Value("${mail.sent-copy.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${mail.sent-copy.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${mail.sent-copy.backoff-initial-ms:60000}")
+    private long backoffInitialMs;
+
+    @Value("${mail.sent-copy.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    @Value("${mail.outbound.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    // Senders with a batch on the way; at most one each
+    private final Set<String> appending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Start one batch for each sender with copies due, up to max-in-flight senders
+     */
+    @Scheduled(fixedDelayString = "${mail.sent-copy.flush-interval-ms:2000}")
+    public void flush() {
+        if (!enabled || appending.size() >= maxInFlight) {
+            return;
+        }
+
+        List<String> senders = outboundMailRepository.findCopySenders(OutboundMail.CopyStatus.PENDING,
+                LocalDateTime.now(), PageRequest.of(0, maxInFlight + appending.size()));
+
+        for (String email : senders) {
+            if (appending.size() >= maxInFlight) {
+                break;
+            }
+            if (!appending.add(email)) {
+                continue;
+            }
+            // Nothing is claimed before the task runs, so a refused task leaves the copies PENDING
+            mailExecutor.<Void>submit(email, () -> {
+                appendBatch(email);
+                return null;
+            }, e -> {
+                log.warn("Sent copies of {} postponed: {}", email, MailExecutor.unwrap(e).getMessage());
+                return null;
+            }).whenComplete((result, e) -> appending.remove(email));
+        }
+    }
+
+    /**
+     * Requeue copies orphaned in APPENDING
+     */
+    @Scheduled(fixedDelayString = "${mail.outbound.maintenance-interval-ms:300000}")
+    public void maintenance() {
+        LocalDateTime now = LocalDateTime.now();
+        int requeued = outboundMailRepository.requeueStaleCopies(OutboundMail.CopyStatus.APPENDING,
+                OutboundMail.CopyStatus.PENDING, now.minus(staleAfterMs, ChronoUnit.MILLIS), now);
+        if (requeued > 0) {
+            log.warn("Requeued {} Sent copies left in APPENDING", requeued);
+        }
+    }
+
+    /**
+     * Claim up to batch-size (and batch-max-bytes) due copies of the sender and append them
+     */
+    private void appendBatch(String email) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = outboundMailRepository.findCopiesDue(email, OutboundMail.CopyStatus.PENDING, now,
+                PageRequest.of(0, batchSize));
+
+        List<OutboundMail> batch = new ArrayList<>(ids.size());
+        long bytes = 0;
+        for (Long id : ids) {
+            if (bytes >= batchMaxBytes) {
+                break;
+            }
+            if (outboundMailRepository.claimCopy(id, OutboundMail.CopyStatus.PENDING,
+                    OutboundMail.CopyStatus.APPENDING, now) == 0) {
+                continue;
+            }
+            OutboundMail job = outboundMailRepository.findById(id).orElse(null);
+            if (job == null) {
+                continue;
+            }
+            long size = OutboundMailService.size(job);
+            if (size < 0) {
+                // The APPEND literal would announce a length that never arrives
+                log.error("Giving up on the Sent copy of outbound mail {} from {}: spool file {} is missing",
+                        job.getId(), job.getFromEmail(), job.getSpoolPath());
+                job.setCopyStatus(OutboundMail.CopyStatus.FAILED);
+                OutboundMailService.release(job);
+                outboundMailRepository.save(job);
+                continue;
+            }
+            batch.add(job);
+            bytes += size;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int[] saved = {0};
+        Exception failure = null;
+        try {
+            // The newest job carries the password the account has now
+            String password = sessionService.decrypt(batch.get(batch.size() - 1).getEncryptedPassword());
+
+            try (ImapConnection connection = connectionPool.borrow(email, password)) {
+                try {
+                    append(connection, batch, saved);
+                } catch (MessagingException e) {
+                    // A NO or BAD answer leaves the connection usable; anything else may not
+                    if (!(e.getCause() instanceof CommandFailedException
+                            || e.getCause() instanceof BadCommandException)) {
+                        connection.invalidate();
+                    }
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMail job = batch.get(i);
+            if (i < saved[0]) {
+                job.setCopyStatus(OutboundMail.CopyStatus.SAVED);
+                OutboundMailService.release(job);
+            } else {
+                retryOrGiveUp(job, failure);
+            }
+        }
+        outboundMailRepository.saveAll(batch);
+
+        if (saved[0] > 0) {
+            log.info("Saved {} sent messages of {} to {}", saved[0], email, folderName);
+        }
+        if (failure != null) {
+            log.warn("Saving {} sent messages of {} to {} failed: {}",
+                    batch.size() - saved[0], email, folderName, failure.getMessage());
+        }
+    }
+
+    /**
+     * APPEND the batch to the Sent folder over the connection's protocol,
+     * creating the folder if the server answers TRYCREATE.
+     * saved[0] counts the messages the server has confirmed.
+     */
+    private void append(ImapConnection connection, List<OutboundMail> batch, int[] saved) throws MessagingException {
+        boolean multiAppend = connection.hasCapability("MULTIAPPEND");
+
+        // Commands run on the protocol of the selected folder, so no extra connection is opened
+        IMAPFolder inbox = connection.openFolder("INBOX", Folder.READ_ONLY);
+        inbox.doCommand(p -> {
+            String mailbox = p.supportsUtf8() ? folderName : BASE64MailboxEncoder.encode(folderName);
+            try {
+                append(p, mailbox, batch, saved, multiAppend);
+            } catch (ProtocolException e) {
+                if (saved[0] > 0 || e.getMessage() == null || !e.getMessage().contains("TRYCREATE")) {
+                    throw e;
+                }
+                log.info("Creating {} folder for {}", folderName, connection.getEmail());
+                p.create(mailbox);
+                append(p, mailbox, batch, saved, multiAppend);
+            }
+            return null;
+        });
+    }
+
+    private static void append(IMAPProtocol p, String mailbox, List<OutboundMail> batch, int[] saved,
+                               boolean multiAppend) throws ProtocolException {
+        if (multiAppend) {
+            // All or nothing: the server stores none of the messages if one fails
+            Argument args = new Argument();
+            args.writeString(mailbox, StandardCharsets.UTF_8);
+            for (OutboundMail job : batch) {
+                message(args, job);
+            }
+            run(p, args);
+            saved[0] = batch.size();
+            return;
+        }
+
+        while (saved[0] < batch.size()) {
+            Argument args = new Argument();
+            args.writeString(mailbox, StandardCharsets.UTF_8);
+            message(args, batch.get(saved[0]));
+            run(p, args);
+            saved[0]++;
+        }
+    }
+
+    private static void run(IMAPProtocol p, Argument args) throws ProtocolException {
+        Response[] responses = p.command("APPEND", args);
+        p.notifyResponseHandlers(responses);
+        p.handleResult(responses[responses.length - 1]);
+    }
+
+    /**
+     * One message of an APPEND: flags, internal date (when it was sent) and
+     * the stored RFC 822 bytes, streamed from raw_message or the spool file.
+     * The stored message has no Bcc header, so the sender's copy gets it back
+     * in front of the other headers.
+     */
+    private static void message(Argument args, OutboundMail job) {
+        LocalDateTime sentAt = job.getSentAt() != null ? job.getSentAt() : job.getCreatedAt();
+        byte[] bcc = job.getBcc() != null
+                ? ("Bcc: " + MimeUtility.fold(5, job.getBcc()) + "\r\n").getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+
+        args.writeAtom(SEEN);
+        args.writeString(INTERNALDATE.format(Date.from(sentAt.atZone(ZoneId.systemDefault()).toInstant())));
+        args.writeBytes(new Literal() {
+            @Override
+            public int size() {
+                return (int) (bcc.length + OutboundMailService.size(job));
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(bcc);
+                try (InputStream in = OutboundMailService.open(job)) {
+                    in.transferTo(out);
+                }
+            }
+        });
+    }
+
+    /**
+     * Back to PENDING after a backoff, or FAILED on rejected credentials and
+     * after max-attempts (the message itself was delivered either way)
+     */
+    private void retryOrGiveUp(OutboundMail job, Exception failure) {
+        job.setCopyAttempts(job.getCopyAttempts() + 1);
+
+        boolean permanent = failure instanceof AuthenticationFailedException
+                || failure instanceof GeneralSecurityException;
+        if (permanent || job.getCopyAttempts() >= maxAttempts) {
+            job.setCopyStatus(OutboundMail.CopyStatus.FAILED);
+            OutboundMailService.release(job);
+            log.error("Giving up on the Sent copy of outbound mail {} from {} after {} attempts",
+                    job.getId(), job.getFromEmail(), job.getCopyAttempts());
+            return;
+        }
+
+        long delay = OutboundMailService.backoff(backoffInitialMs, backoffMaxMs, job.getCopyAttempts());
+        job.setCopyStatus(OutboundMail.CopyStatus.PENDING);
+        job.setNextAttemptAt(LocalDateTime.now().plus(delay, ChronoUnit.MILLIS));
+    }
+}
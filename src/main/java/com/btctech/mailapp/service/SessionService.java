@@ -113,9 +113,9 @@ public class SessionService {
     }
     
     /**
-     * Encrypt password using AES
+     * Encrypt password using AES (also used for passwords held by queued outbound mail)
      */
-    private String encrypt(String plainText) throws Exception {
+    String encrypt(String plainText) throws Exception {
         SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(), "AES");
         Cipher cipher = Cipher.getInstance("AES");
         cipher.init(Cipher.ENCRYPT_MODE, key);
@@ -126,7 +126,7 @@ public class SessionService {
     /**
      * Decrypt password using AES
      */
-    private String decrypt(String encryptedText) throws Exception {
+    String decrypt(String encryptedText) throws Exception {
         SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(), "AES");
         Cipher cipher = Cipher.getInstance("AES");
         cipher.init(Cipher.DECRYPT_MODE, key);
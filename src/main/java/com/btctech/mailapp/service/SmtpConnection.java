@@ -0,0 +1,125 @@
+package com.btctech.mailapp.service;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPTransport;
+
+/**
+ * Authenticated SMTP transport borrowed from {@link SmtpConnectionPool}.
+ * One connection carries many messages; the pool issues RSET before each
+ * reuse, so every message starts from a clean transaction.
+ */
+@Slf4j
+public class SmtpConnection implements AutoCloseable {
+
+    private final SmtpConnectionPool pool;
+    private final String email;
+    private final String credential;
+    private final SMTPTransport transport;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+    private int sent;
+    private boolean invalid;
+
+    SmtpConnection(SmtpConnectionPool pool, String email, String credential, SMTPTransport transport) {
+        this.pool = pool;
+        this.email = email;
+        this.credential = credential;
+        this.transport = transport;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Send to all recipients of the message (saveChanges() must have been called).
+     * Rejected recipients (SendFailedException) leave the connection usable;
+     * any other failure closes it instead of pooling it. Nothing is retried -
+     * the server may already have accepted the message.
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        send(message, message.getAllRecipients());
+    }
+
+    /**
+     * Send to the given envelope recipients, whatever the headers say
+     */
+    public void send(MimeMessage message, Address[] recipients) throws MessagingException {
+        try {
+            transport.sendMessage(message, recipients);
+            sent++;
+        } catch (SendFailedException e) {
+            throw e;
+        } catch (MessagingException | RuntimeException e) {
+            invalid = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Mark the connection as broken so it is closed instead of pooled
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    String getCredential() {
+        return credential;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    int getSent() {
+        return sent;
+    }
+
+    boolean isInvalid() {
+        return invalid;
+    }
+
+    void markBorrowed() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    void markReturned() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * RSET before reuse: clears any half-finished transaction and proves the
+     * server has not dropped the idle connection
+     */
+    boolean reset() {
+        if (invalid) {
+            return false;
+        }
+        try {
+            // Also the liveness check (isConnected() would add a NOOP round trip)
+            transport.issueCommand("RSET", 250);
+            return true;
+        } catch (MessagingException | IllegalStateException e) {
+            log.debug("Pooled SMTP connection for {} failed RSET: {}", email, e.getMessage());
+            return false;
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            // Usually an idle connection the server has already dropped
+            log.debug("Error closing SMTP connection: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.exception.MailException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of authenticated SMTP transports, keyed by sender email.
+ * A send on a warm connection is RSET + MAIL/RCPT/DATA instead of TCP
+ * connect, EHLO, STARTTLS, EHLO, AUTH and QUIT around every message.
+ * Idle connections are closed well before Postfix's own idle timeout, and
+ * a connection is retired after max-messages so no session lives forever.
+ */
+@Slf4j
+@Service
+public class SmtpConnectionPool {
+
+    @Value("${mail.smtp.host}")
+    private String smtpHost;
+
+    @Value("${mail.smtp.port}")
+    private int smtpPort;
+
+    @Value("${mail.smtp.pool.max-per-account:2}")
+    private int maxPerAccount;
+
+    @Value("${mail.smtp.pool.max-total:50}")
+    private int maxTotal;
+
+    @Value("${mail.smtp.pool.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${mail.smtp.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    @Value("${mail.smtp.pool.max-messages:100}")
+    private int maxMessages;
+
+    private final Map<String, AccountPool> pools = new ConcurrentHashMap<>();
+
+    private Semaphore totalPermits;
+    private Session session;
+
+    @PostConstruct
+    void init() {
+        Properties props = new Properties();
+        props.put("mail.smtp.class", SMTPTransport.class.getName());
+        props.put("mail.smtp.host", smtpHost);
+        props.put("mail.smtp.port", String.valueOf(smtpPort));
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.starttls.required", "true");
+        props.put("mail.smtp.ssl.protocols", "TLSv1.2 TLSv1.3");
+        props.put("mail.smtp.timeout", "10000"); // 10 seconds
+        props.put("mail.smtp.connectiontimeout", "10000");
+        props.put("mail.smtp.writetimeout", "10000");
+        // Closing a pooled connection need not wait for the QUIT reply
+        props.put("mail.smtp.quitwait", "false");
+        // One rejected RCPT must not hold the message back from the others; the
+        // outbound queue retries or fails the rest from the SendFailedException
+        props.put("mail.smtp.sendpartial", "true");
+
+        session = Session.getInstance(props);
+        totalPermits = new Semaphore(maxTotal, true);
+
+        log.info("SMTP pool initialized: maxPerAccount={}, maxTotal={}, idleTimeout={}ms, maxMessages={}",
+                maxPerAccount, maxTotal, idleTimeoutMs, maxMessages);
+    }
+
+    /**
+     * Session to build outgoing messages with
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Send one message from the account over a pooled connection
+     */
+    public void send(String email, String password, MimeMessage message) throws MessagingException {
+        message.saveChanges();
+        send(email, password, message, message.getAllRecipients());
+    }
+
+    /**
+     * Send a message as is (no saveChanges(), so a stored message keeps its
+     * Message-ID) to the given envelope recipients
+     */
+    public void send(String email, String password, MimeMessage message, Address[] recipients)
+            throws MessagingException {
+        try (SmtpConnection connection = borrow(email, password)) {
+            connection.send(message, recipients);
+        }
+    }
+
+    /**
+     * Borrow a connection for the given sender.
+     * Always close the returned connection (try-with-resources) to give it back.
+     */
+    public SmtpConnection borrow(String email, String password) throws MessagingException {
+        // Matched by digest, so a password change never reuses a connection authenticated with the old one
+        String credential = Hashes.sha256Hex(password);
+        AccountPool pool = pools.computeIfAbsent(email, k -> new AccountPool(maxPerAccount));
+
+        if (!acquire(pool.permits)) {
+            throw new MailException("Too many concurrent SMTP connections for " + email);
+        }
+
+        try {
+            // Reuse the most recently returned connection if RSET still succeeds on it
+            SmtpConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                if (connection.getCredential().equals(credential) && connection.reset()) {
+                    connection.markBorrowed();
+                    log.debug("Reusing pooled SMTP connection for {}", email);
+                    return connection;
+                }
+                destroy(connection);
+            }
+
+            // Open a new one within the global cap
+            if (!totalPermits.tryAcquire()) {
+                evictOldestIdle();
+                if (!acquire(totalPermits)) {
+                    throw new MailException("SMTP connection limit reached, try again later");
+                }
+            }
+
+            try {
+                SMTPTransport transport = (SMTPTransport) session.getTransport("smtp");
+                transport.connect(smtpHost, smtpPort, email, password);
+                log.debug("Opened new SMTP connection for {}", email);
+
+                connection = new SmtpConnection(this, email, credential, transport);
+                connection.markBorrowed();
+                return connection;
+            } catch (MessagingException | RuntimeException e) {
+                totalPermits.release();
+                throw e;
+            }
+        } catch (MessagingException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Called by {@link SmtpConnection#close()}
+     */
+    void release(SmtpConnection connection) {
+        AccountPool pool = pools.get(connection.getEmail());
+
+        if (connection.isInvalid() || connection.getSent() >= maxMessages || pool == null) {
+            destroy(connection);
+        } else {
+            connection.markReturned();
+            pool.idle.offerFirst(connection);
+        }
+
+        if (pool != null) {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Drop all idle connections of an account (e.g. after password change)
+     */
+    public void evictAccount(String email) {
+        AccountPool pool = pools.get(email);
+        if (pool == null) {
+            return;
+        }
+
+        SmtpConnection connection;
+        while ((connection = pool.idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+
+    /**
+     * Close connections that have been idle longer than the idle timeout
+     */
+    @Scheduled(fixedDelayString = "${mail.smtp.pool.evict-interval-ms:15000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        for (Map.Entry<String, AccountPool> entry : pools.entrySet()) {
+            Iterator<SmtpConnection> it = entry.getValue().idle.descendingIterator();
+            while (it.hasNext()) {
+                SmtpConnection connection = it.next();
+                if (now - connection.getLastUsed() > idleTimeoutMs && entry.getValue().idle.remove(connection)) {
+                    destroy(connection);
+                    evicted++;
+                }
+            }
+        }
+
+        if (evicted > 0) {
+            log.debug("Evicted {} idle SMTP connections ({} still open)", evicted, getOpenCount());
+        }
+    }
+
+    public int getOpenCount() {
+        return maxTotal - totalPermits.availablePermits();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (AccountPool pool : pools.values()) {
+            SmtpConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                destroy(connection);
+            }
+        }
+        log.info("SMTP pool shut down");
+    }
+
+    /**
+     * Make room under the global cap by closing the least recently used idle connection
+     */
+    private void evictOldestIdle() {
+        AccountPool oldestPool = null;
+        SmtpConnection oldest = null;
+
+        for (AccountPool pool : pools.values()) {
+            SmtpConnection candidate = pool.idle.peekLast();
+            if (candidate != null && (oldest == null || candidate.getLastUsed() < oldest.getLastUsed())) {
+                oldest = candidate;
+                oldestPool = pool;
+            }
+        }
+
+        if (oldest != null && oldestPool.idle.remove(oldest)) {
+            destroy(oldest);
+        }
+    }
+
+    private void destroy(SmtpConnection connection) {
+        connection.closeQuietly();
+        totalPermits.release();
+    }
+
+    private boolean acquire(Semaphore semaphore) {
+        try {
+            return semaphore.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class AccountPool {
+        private final Deque<SmtpConnection> idle = new ConcurrentLinkedDeque<>();
+        private final Semaphore permits;
+
+        AccountPool(int maxPerAccount) {
+            this.permits = new Semaphore(maxPerAccount, true);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.AccountInboxDTO;
+import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.InboxCursor;
+import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.dto.UnifiedCursor;
+import com.btctech.mailapp.dto.UnifiedInboxResponse;
+import com.btctech.mailapp.entity.MailAccount;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One inbox over every mail account of a user.
+ * The INBOX page of each account is read in parallel on the MailExecutor (so
+ * the per-account bulkheads apply) and the pages are k-way merged by date.
+ * The shared cursor keeps each account's own keyset position, so the next
+ * page continues every account right after the last message it contributed.
+ * An account that fails or is slower than account-timeout-ms is reported and
+ * left out of this page only - it keeps its position for the next one.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UnifiedInboxService {
+
+    private static final String FOLDER = "INBOX";
+
+    // Newest first; messages without any date sort last
+    private static final Comparator<EmailDTO> BY_DATE = Comparator.comparing(UnifiedInboxService::date,
+            Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final MailboxService mailboxService;
+    private final MailExecutor mailExecutor;
+    private final MaildirReader maildirReader;
+    private final MailIndexService mailIndexService;
+    private final MailReceiveService mailReceiveService;
+
+    @Value("${mail.unified.account-timeout-ms:10000}")
+    private long accountTimeoutMs;
+
+    /**
+     * One merged page; completes once every account has answered or timed out
+     */
+    public CompletableFuture<UnifiedInboxResponse> getInbox(String email, String password, int limit, String cursor) {
+        Map<String, String> previous = cursor != null && !cursor.isEmpty()
+                ? UnifiedCursor.decode(cursor).getPositions()
+                : null;
+
+        // Only accounts of this user are read, whatever the cursor names
+        Map<String, String> positions = new LinkedHashMap<>();
+        Map<String, String> passwords = new HashMap<>();
+        MailAccount current = mailboxService.getMailAccountByEmail(email);
+        for (MailAccount account : mailboxService.getUserEmails(current.getUserId())) {
+            if (!Boolean.TRUE.equals(account.getActive())) {
+                continue;
+            }
+            // Each account logs in with its own password; the session only knows the one it was opened with
+            passwords.put(account.getEmail(), account.getPassword() != null ? account.getPassword() : password);
+            if (previous == null) {
+                positions.put(account.getEmail(), UnifiedCursor.START);
+            } else if (previous.containsKey(account.getEmail())) {
+                // Accounts added after the first page join when the listing restarts
+                positions.put(account.getEmail(), previous.get(account.getEmail()));
+            }
+        }
+
+        List<CompletableFuture<Page>> pending = new ArrayList<>();
+        for (Map.Entry<String, String> entry : positions.entrySet()) {
+            if (UnifiedCursor.DONE.equals(entry.getValue())) {
+                continue;
+            }
+            String account = entry.getKey();
+            String position = entry.getValue();
+            String inboxCursor = UnifiedCursor.START.equals(position) ? null : position;
+            String accountPassword = passwords.get(account);
+
+            pending.add(mailExecutor.submit(account,
+                            () -> new Page(account, position,
+                                    readInbox(account, accountPassword, limit, inboxCursor), null),
+                            e -> new Page(account, position, null, MailExecutor.unwrap(e).getMessage()))
+                    .completeOnTimeout(new Page(account, position, null, "Timed out"),
+                            accountTimeoutMs, TimeUnit.MILLISECONDS));
+        }
+
+        log.info("Unified inbox for {}: reading {} of {} accounts", email, pending.size(), positions.size());
+
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    List<Page> pages = new ArrayList<>(pending.size());
+                    for (CompletableFuture<Page> page : pending) {
+                        pages.add(page.join());
+                    }
+                    return merge(pages, positions, limit);
+                });
+    }
+
+    /**
+     * Same source the single-account inbox would use
+     */
+    private InboxResponse readInbox(String account, String password, int limit, String cursor) {
+        if (maildirReader.canServe(account, FOLDER)) {
+            return maildirReader.getMessages(account, password, FOLDER, limit, cursor);
+        }
+        if (mailIndexService.isEnabled()) {
+            return mailIndexService.getMessages(account, password, FOLDER, limit, cursor);
+        }
+        return mailReceiveService.getMessages(account, password, FOLDER, limit, cursor);
+    }
+
+    /**
+     * K-way merge of the account pages (each newest first) and the positions after it
+     */
+    static UnifiedInboxResponse merge(List<Page> pages, Map<String, String> positions, int limit) {
+        List<AccountInboxDTO> accounts = new ArrayList<>(pages.size());
+        int totalCount = 0;
+        int unreadCount = 0;
+
+        List<Head> read = new ArrayList<>(pages.size());
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::current, BY_DATE)
+                .thenComparingInt(head -> head.order));
+
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (page.response == null) {
+                log.warn("Unified inbox: {} skipped ({})", page.account, page.error);
+                accounts.add(AccountInboxDTO.builder().email(page.account).success(false).error(page.error).build());
+                continue;
+            }
+
+            accounts.add(AccountInboxDTO.builder()
+                    .email(page.account)
+                    .totalCount(page.response.getTotalCount())
+                    .unreadCount(page.response.getUnreadCount())
+                    .success(true)
+                    .build());
+            totalCount += page.response.getTotalCount();
+            unreadCount += page.response.getUnreadCount();
+
+            Head head = new Head(page, i);
+            read.add(head);
+            if (head.current() != null) {
+                heads.add(head);
+            }
+        }
+
+        List<EmailDTO> emails = new ArrayList<>(limit);
+        while (emails.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            emails.add(head.current().toBuilder().account(head.page.account).build());
+            head.next++;
+            if (head.current() != null) {
+                heads.add(head);
+            }
+        }
+
+        // Failed accounts keep their old position
+        Map<String, String> next = new LinkedHashMap<>(positions);
+        for (Head head : read) {
+            next.put(head.page.account, nextPosition(head.page, head.next));
+        }
+
+        boolean hasMore = next.values().stream().anyMatch(position -> !UnifiedCursor.DONE.equals(position));
+
+        return UnifiedInboxResponse.builder()
+                .accounts(accounts)
+                .totalCount(totalCount)
+                .unreadCount(unreadCount)
+                .emails(emails)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? new UnifiedCursor(next).encode() : null)
+                .build();
+    }
+
+    /**
+     * Position of an account once the first consumed messages of its page were returned
+     */
+    private static String nextPosition(Page page, int consumed) {
+        List<EmailDTO> emails = page.response.getEmails();
+        if (consumed == emails.size()) {
+            return page.response.isHasMore() ? page.response.getNextCursor() : UnifiedCursor.DONE;
+        }
+        if (consumed == 0) {
+            return page.position;
+        }
+        EmailDTO last = emails.get(consumed - 1);
+        return new InboxCursor(last.getUidValidity(), Long.parseLong(last.getUid())).encode();
+    }
+
+    private static Date date(EmailDTO email) {
+        return email.getReceivedDate() != null ? email.getReceivedDate() : email.getSentDate();
+    }
+
+    /**
+     * One account's answer: its inbox page, or why there is none
+     */
+    record Page(String account, String position, InboxResponse response, String error) {
+    }
+
+    private static final class Head {
+        private final Page page;
+        private final int order;
+        private int next;
+
+        Head(Page page, int order) {
+            this.page = page;
+            this.order = order;
+        }
+
+        EmailDTO current() {
+            List<EmailDTO> emails = page.response.getEmails();
+            return next < emails.size() ? emails.get(next) : null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.btctech.mailapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MailTemplateTest {
+
+    private static final Map<String, String> BOB = Map.of("name", "Bob", "team", "R&D <ops>");
+
+    @Test
+    void placeholdersAreReplacedAndTrimmed() {
+        assertEquals("Hi Bob from R&D <ops>!",
+                MailTemplate.compile("Hi {{name}} from {{ team }}!").render(BOB, false));
+    }
+
+    @Test
+    void adjacentAndLeadingPlaceholdersRender() {
+        assertEquals("BobBob, Bob", MailTemplate.compile("{{name}}{{name}}, {{name}}").render(BOB, false));
+    }
+
+    @Test
+    void unknownNamesRenderEmpty() {
+        assertEquals("Hi !", MailTemplate.compile("Hi {{nickname}}!").render(BOB, false));
+        assertEquals("Hi !", MailTemplate.compile("Hi {{}}!").render(BOB, false));
+    }
+
+    @Test
+    void htmlValuesAreEscapedButTheTemplateIsNot() {
+        assertEquals("<b>R&amp;D &lt;ops&gt;</b>",
+                MailTemplate.compile("<b>{{team}}</b>").render(BOB, true));
+    }
+
+    @Test
+    void unclosedPlaceholderStaysLiteral() {
+        assertEquals("Hi {{name", MailTemplate.compile("Hi {{name").render(BOB, false));
+        assertEquals("Hi Bob, {{team", MailTemplate.compile("Hi {{name}}, {{team").render(BOB, false));
+        assertEquals("{{", MailTemplate.compile("{{").render(BOB, false));
+    }
+
+    @Test
+    void strayBracesStayLiteral() {
+        assertEquals("}} Bob} {", MailTemplate.compile("}} {{name}}} {").render(BOB, false));
+    }
+
+    @Test
+    void templateWithoutPlaceholdersIsUnchanged() {
+        assertEquals("", MailTemplate.compile("").render(BOB, false));
+        assertEquals("plain text", MailTemplate.compile("plain text").render(Map.of(), true));
+    }
+}
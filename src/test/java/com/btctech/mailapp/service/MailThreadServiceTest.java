@@ -0,0 +1,145 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.entity.Mail;
+import com.btctech.mailapp.repository.MailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MailThreadServiceTest {
+
+    private MailRepository mailRepository;
+    private MailThreadService service;
+
+    @BeforeEach
+    void setUp() {
+        mailRepository = mock(MailRepository.class);
+        service = new MailThreadService(mailRepository);
+    }
+
+    @Test
+    void referencesListRootFirstWithoutDuplicatesOrSelf() {
+        Mail mail = mail("<c@x>", "<b@x>", "<a@x> (comment) <b@x>\r\n <c@x>");
+
+        assertEquals(List.of("<a@x>", "<b@x>"), MailThreadService.references(mail));
+    }
+
+    @Test
+    void referencesIgnoreUnclosedAndEmptyIds() {
+        Mail mail = mail("<m@x>", null, "<> <a@x> <broken");
+
+        assertEquals(List.of("<a@x>"), MailThreadService.references(mail));
+    }
+
+    @Test
+    void threadIdIsStableAndIgnoresSurroundingWhitespace() {
+        String id = MailThreadService.threadId("<a@x>");
+
+        assertEquals(32, id.length());
+        assertEquals(id, MailThreadService.threadId("  <a@x>\r\n"));
+        assertNotEquals(id, MailThreadService.threadId("<b@x>"));
+    }
+
+    @Test
+    void replyThreadsUnderTheRootOfItsReferences() {
+        Mail root = mail("<a@x>", null, null);
+        Mail reply = mail("<b@x>", "<a@x>", "<a@x>");
+
+        service.assignThreads(1L, List.of(root, reply));
+
+        assertEquals(MailThreadService.threadId("<a@x>"), root.getThreadId());
+        assertEquals(root.getThreadId(), reply.getThreadId());
+    }
+
+    @Test
+    void knownMessageThreadWins() {
+        Mail indexed = mail("<b@x>", null, null);
+        indexed.setThreadId("existing");
+        when(mailRepository.findByMailAccountIdAndMessageIdIn(eq(1L), anyCollection())).thenReturn(List.of(indexed));
+
+        Mail reply = mail("<c@x>", "<b@x>", "<a@x> <b@x>");
+        service.assignThreads(1L, List.of(reply));
+
+        assertEquals("existing", reply.getThreadId());
+    }
+
+    @Test
+    void replyBeforeItsParentInTheSameBatchFollowsTheParent() {
+        // R only knows its parent B; B, later in the batch, belongs to the thread of A
+        Mail reply = mail("<r@x>", "<b@x>", null);
+        Mail parent = mail("<b@x>", null, "<a@x>");
+
+        service.assignThreads(1L, List.of(reply, parent));
+
+        assertEquals(MailThreadService.threadId("<a@x>"), parent.getThreadId());
+        assertEquals(parent.getThreadId(), reply.getThreadId());
+    }
+
+    @Test
+    void chainsInTheSameBatchResolveToTheEnd() {
+        Mail c = mail("<c@x>", "<b@x>", null);
+        Mail d = mail("<d@x>", "<c@x>", null);
+        Mail b = mail("<b@x>", "<a@x>", null);
+        Mail a = mail("<a@x>", null, "<root@x>");
+
+        service.assignThreads(1L, List.of(d, c, b, a));
+
+        String root = MailThreadService.threadId("<root@x>");
+        assertEquals(root, a.getThreadId());
+        assertEquals(root, b.getThreadId());
+        assertEquals(root, c.getThreadId());
+        assertEquals(root, d.getThreadId());
+    }
+
+    @Test
+    void savedRepliesAreMovedToTheResolvedThread() {
+        String parentKey = MailThreadService.threadId("<b@x>");
+        String root = MailThreadService.threadId("<a@x>");
+        when(mailRepository.findThreadIdsIn(eq(1L), anyCollection())).thenReturn(List.of(parentKey));
+
+        service.assignThreads(1L, List.of(mail("<b@x>", null, "<a@x>")));
+
+        verify(mailRepository).moveThread(1L, parentKey, root);
+    }
+
+    @Test
+    void nothingIsMovedWhenEveryMessageIsItsOwnRoot() {
+        service.assignThreads(1L, List.of(mail("<a@x>", null, null), mail("<b@x>", null, null)));
+
+        verify(mailRepository, never()).findThreadIdsIn(anyLong(), anyCollection());
+        verify(mailRepository, never()).moveThread(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void resolveStopsOnCycles() {
+        Map<String, String> provisional = Map.of("x", "y", "y", "x", "p", "q");
+
+        assertEquals("x", MailThreadService.resolve(provisional, "x"));
+        assertEquals("q", MailThreadService.resolve(provisional, "p"));
+        assertEquals("z", MailThreadService.resolve(provisional, "z"));
+    }
+
+    private static Mail mail(String messageId, String inReplyTo, String references) {
+        Mail mail = new Mail();
+        mail.setFolderId(1L);
+        mail.setUid(1L);
+        mail.setMessageId(messageId);
+        mail.setInReplyTo(inReplyTo);
+        mail.setReferences(references);
+        return mail;
+    }
+}
@@ -0,0 +1,107 @@
+package com.btctech.mailapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MaildirDeliveryTest {
+
+    @Test
+    void crlfIsStoredAsLfAndCounted() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        write(lineEnds, "Subject: hi\r\n\r\nbody\r\n");
+        lineEnds.flush();
+
+        assertEquals("Subject: hi\n\nbody\n", text(out));
+        assertEquals(18, lineEnds.size);
+        assertEquals(3, lineEnds.lines);
+    }
+
+    @Test
+    void crSplitAcrossWritesStillJoinsItsLf() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        write(lineEnds, "one\r");
+        write(lineEnds, "\ntwo\r");
+        write(lineEnds, "\n");
+        lineEnds.flush();
+
+        assertEquals("one\ntwo\n", text(out));
+        assertEquals(8, lineEnds.size);
+        assertEquals(2, lineEnds.lines);
+    }
+
+    @Test
+    void loneCrIsKept() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        write(lineEnds, "a\rb\r");
+        write(lineEnds, "c\r\r\n");
+        lineEnds.flush();
+
+        assertEquals("a\rb\rc\r\n", text(out));
+        assertEquals(7, lineEnds.size);
+        assertEquals(1, lineEnds.lines);
+    }
+
+    @Test
+    void trailingCrIsWrittenOnFlush() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        write(lineEnds, "end\r");
+        assertEquals("end", text(out));
+
+        lineEnds.flush();
+        assertEquals("end\r", text(out));
+        assertEquals(4, lineEnds.size);
+        assertEquals(0, lineEnds.lines);
+    }
+
+    @Test
+    void singleBytesAndArraysCountAlike() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        for (byte b : "x\r\ny\n".getBytes(StandardCharsets.US_ASCII)) {
+            lineEnds.write(b);
+        }
+        write(lineEnds, "z\r\n");
+        lineEnds.flush();
+
+        assertEquals("x\ny\nz\n", text(out));
+        assertEquals(6, lineEnds.size);
+        assertEquals(3, lineEnds.lines);
+    }
+
+    @Test
+    void onlyTheGivenSliceIsWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaildirDelivery.LineEnds lineEnds = new MaildirDelivery.LineEnds(out);
+
+        byte[] buffer = "--a\r\nb\r--".getBytes(StandardCharsets.US_ASCII);
+        lineEnds.write(buffer, 2, buffer.length - 4);
+        lineEnds.flush();
+
+        assertEquals("a\nb\r", text(out));
+        assertEquals(4, lineEnds.size);
+        assertEquals(1, lineEnds.lines);
+    }
+
+    private static void write(MaildirDelivery.LineEnds lineEnds, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        lineEnds.write(bytes, 0, bytes.length);
+    }
+
+    private static String text(ByteArrayOutputStream out) {
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,93 @@
+package com.btctech.mailapp.service;
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.InternetAddress;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundMailServiceTest {
+
+    @Test
+    void rejectedCredentialsAndBrokenJobsArePermanent() {
+        assertTrue(OutboundMailService.isPermanent(new AuthenticationFailedException("535 bad login")));
+        assertTrue(OutboundMailService.isPermanent(new GeneralSecurityException("bad tag")));
+    }
+
+    @Test
+    void errorsWithoutReplyCodesAreRetried() {
+        assertFalse(OutboundMailService.isPermanent(new MessagingException("connection reset")));
+        assertFalse(OutboundMailService.isPermanent(new IOException("spool unreadable")));
+        assertFalse(OutboundMailService.isPermanent(new SendFailedException("Invalid Addresses")));
+    }
+
+    @Test
+    void onlyFiveHundredRepliesArePermanent() {
+        assertTrue(OutboundMailService.isPermanent(
+                sendFailed(address("a@x", 550), address("b@x", 553))));
+        assertTrue(OutboundMailService.isPermanent(
+                new SMTPSendFailedException("DATA", 554, "554 rejected", null, null, null, null)));
+    }
+
+    @Test
+    void anyFourHundredReplyInTheChainIsRetried() {
+        assertFalse(OutboundMailService.isPermanent(
+                sendFailed(address("a@x", 550), address("b@x", 451))));
+        assertFalse(OutboundMailService.isPermanent(
+                sendFailed(address("a@x", 452), address("b@x", 550))));
+        assertFalse(OutboundMailService.isPermanent(
+                new SMTPSendFailedException("DATA", 421, "421 closing", null, null, null, null)));
+    }
+
+    @Test
+    void backoffDoublesWithJitter() {
+        for (int attempt = 1; attempt <= 4; attempt++) {
+            long base = 1000L << (attempt - 1);
+            for (int i = 0; i < 50; i++) {
+                long delay = OutboundMailService.backoff(1000, 3_600_000, attempt);
+                assertTrue(delay >= base * 0.8 && delay < base * 1.2, "attempt " + attempt + ": " + delay);
+            }
+        }
+    }
+
+    @Test
+    void backoffIsCappedAndDoesNotOverflow() {
+        for (int attempt : new int[]{10, 21, 64, Integer.MAX_VALUE}) {
+            long delay = OutboundMailService.backoff(1000, 60_000, attempt);
+            assertTrue(delay >= 48_000 && delay < 72_000, "attempt " + attempt + ": " + delay);
+        }
+    }
+
+    /**
+     * The SendFailedException the transport throws: its next exceptions are
+     * the per-recipient RCPT failures in order
+     */
+    private static SendFailedException sendFailed(SMTPAddressFailedException... failures) {
+        Address[] invalid = new Address[failures.length];
+        for (int i = 0; i < failures.length; i++) {
+            invalid[i] = failures[i].getAddress();
+            if (i > 0) {
+                failures[i - 1].setNextException(failures[i]);
+            }
+        }
+        return new SendFailedException("Invalid Addresses", failures[0], null, null, invalid);
+    }
+
+    private static SMTPAddressFailedException address(String email, int code) {
+        try {
+            return new SMTPAddressFailedException(new InternetAddress(email), "RCPT TO:<" + email + ">",
+                    code, code + " " + email + " rejected");
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
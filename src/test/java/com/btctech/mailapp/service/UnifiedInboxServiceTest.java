@@ -0,0 +1,194 @@
+package com.btctech.mailapp.service;
+
+import com.btctech.mailapp.dto.EmailDTO;
+import com.btctech.mailapp.dto.InboxCursor;
+import com.btctech.mailapp.dto.InboxResponse;
+import com.btctech.mailapp.dto.UnifiedCursor;
+import com.btctech.mailapp.dto.UnifiedInboxResponse;
+import com.btctech.mailapp.entity.MailAccount;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UnifiedInboxServiceTest {
+
+    @Test
+    void pagesAreMergedNewestFirst() {
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", UnifiedCursor.START, inbox(false, email(10, 100), email(8, 80))),
+                page("b@x", UnifiedCursor.START, inbox(false, email(9, 90), email(7, 70)))
+        ), positions("a@x", "b@x"), 10);
+
+        assertEquals(List.of("10", "9", "8", "7"), uids(response));
+        assertEquals(List.of("a@x", "b@x", "a@x", "b@x"),
+                response.getEmails().stream().map(EmailDTO::getAccount).toList());
+        assertFalse(response.isHasMore());
+        assertNull(response.getNextCursor());
+    }
+
+    @Test
+    void partlyConsumedPageContinuesAfterItsLastReturnedMessage() {
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", UnifiedCursor.START, inbox(true, email(10, 100), email(6, 60), email(5, 50))),
+                page("b@x", UnifiedCursor.START, inbox(false, email(9, 90), email(8, 80)))
+        ), positions("a@x", "b@x"), 3);
+
+        assertEquals(List.of("10", "9", "8"), uids(response));
+        assertTrue(response.isHasMore());
+
+        Map<String, String> next = UnifiedCursor.decode(response.getNextCursor()).getPositions();
+        assertEquals(new InboxCursor(1, 10).encode(), next.get("a@x"));
+        assertEquals(UnifiedCursor.DONE, next.get("b@x"));
+    }
+
+    @Test
+    void untouchedPageKeepsItsPositionAndConsumedPageTakesItsCursor() {
+        InboxResponse older = inbox(true, email(2, 20));
+        older.setNextCursor("a-next");
+        InboxResponse newer = inbox(true, email(9, 90));
+        newer.setNextCursor("b-next");
+
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", "a-pos", older),
+                page("b@x", "b-pos", newer)
+        ), positions("a@x", "b@x"), 1);
+
+        Map<String, String> next = UnifiedCursor.decode(response.getNextCursor()).getPositions();
+        assertEquals("a-pos", next.get("a@x"));
+        assertEquals("b-next", next.get("b@x"));
+    }
+
+    @Test
+    void failedAccountIsReportedAndKeepsItsPosition() {
+        Map<String, String> positions = positions("a@x", "b@x");
+        positions.put("b@x", "b-pos");
+
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", UnifiedCursor.START, inbox(false, email(3, 30))),
+                new UnifiedInboxService.Page("b@x", "b-pos", null, "Timed out")
+        ), positions, 10);
+
+        assertEquals(List.of("3"), uids(response));
+        assertFalse(response.getAccounts().get(1).isSuccess());
+        assertEquals("Timed out", response.getAccounts().get(1).getError());
+        assertTrue(response.isHasMore());
+        assertEquals("b-pos", UnifiedCursor.decode(response.getNextCursor()).getPositions().get("b@x"));
+    }
+
+    @Test
+    void messagesWithoutDateSortLastAndTiesKeepAccountOrder() {
+        EmailDTO undated = EmailDTO.builder().uid("1").uidValidity(1).build();
+
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", UnifiedCursor.START, inbox(false, undated)),
+                page("b@x", UnifiedCursor.START, inbox(false, email(4, 50))),
+                page("c@x", UnifiedCursor.START, inbox(false, email(5, 50)))
+        ), positions("a@x", "b@x", "c@x"), 10);
+
+        assertEquals(List.of("4", "5", "1"), uids(response));
+    }
+
+    @Test
+    void countsAreSummedOverAnsweredAccounts() {
+        InboxResponse a = inbox(false);
+        a.setTotalCount(5);
+        a.setUnreadCount(2);
+        InboxResponse b = inbox(false);
+        b.setTotalCount(7);
+        b.setUnreadCount(1);
+
+        UnifiedInboxResponse response = UnifiedInboxService.merge(List.of(
+                page("a@x", UnifiedCursor.START, a),
+                page("b@x", UnifiedCursor.START, b)
+        ), positions("a@x", "b@x"), 10);
+
+        assertEquals(12, response.getTotalCount());
+        assertEquals(3, response.getUnreadCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void everyAccountIsReadWithItsOwnPassword() {
+        MailboxService mailboxService = mock(MailboxService.class);
+        MailExecutor mailExecutor = mock(MailExecutor.class);
+        MaildirReader maildirReader = mock(MaildirReader.class);
+        MailIndexService mailIndexService = mock(MailIndexService.class);
+        MailReceiveService mailReceiveService = mock(MailReceiveService.class);
+
+        MailAccount main = account("a@x", "session-secret");
+        MailAccount other = account("b@x", "other-secret");
+        when(mailboxService.getMailAccountByEmail("a@x")).thenReturn(main);
+        when(mailboxService.getUserEmails(1L)).thenReturn(List.of(main, other));
+        when(mailExecutor.submit(anyString(), any(Callable.class), any())).thenAnswer(invocation -> {
+            Callable<Object> work = invocation.getArgument(1);
+            return CompletableFuture.completedFuture(work.call());
+        });
+        when(mailReceiveService.getMessages(anyString(), anyString(), eq("INBOX"), anyInt(), isNull()))
+                .thenReturn(inbox(false));
+
+        new UnifiedInboxService(mailboxService, mailExecutor, maildirReader, mailIndexService, mailReceiveService)
+                .getInbox("a@x", "session-secret", 20, null).join();
+
+        verify(mailReceiveService).getMessages("a@x", "session-secret", "INBOX", 20, null);
+        verify(mailReceiveService).getMessages("b@x", "other-secret", "INBOX", 20, null);
+    }
+
+    private static UnifiedInboxService.Page page(String account, String position, InboxResponse response) {
+        return new UnifiedInboxService.Page(account, position, response, null);
+    }
+
+    private static InboxResponse inbox(boolean hasMore, EmailDTO... emails) {
+        return InboxResponse.builder()
+                .emails(List.of(emails))
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? "more" : null)
+                .build();
+    }
+
+    private static EmailDTO email(long uid, long received) {
+        return EmailDTO.builder()
+                .uid(String.valueOf(uid))
+                .uidValidity(1)
+                .receivedDate(new Date(received))
+                .build();
+    }
+
+    private static Map<String, String> positions(String... accounts) {
+        Map<String, String> positions = new LinkedHashMap<>();
+        for (String account : accounts) {
+            positions.put(account, UnifiedCursor.START);
+        }
+        return positions;
+    }
+
+    private static List<String> uids(UnifiedInboxResponse response) {
+        return response.getEmails().stream().map(EmailDTO::getUid).toList();
+    }
+
+    private static MailAccount account(String email, String password) {
+        MailAccount account = new MailAccount();
+        account.setUserId(1L);
+        account.setEmail(email);
+        account.setPassword(password);
+        account.setActive(true);
+        return account;
+    }
+}